@@ -0,0 +1,107 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * {@link BatchCacheable}方法预先解析好的元数据, 每个{@link Method}仅解析一次.
+ */
+final class BatchCacheOperation {
+
+    final CacheOperation operation;
+
+    // id集合在入参中的下标
+    final int index;
+
+    // 返回值是否为Map
+    final boolean mapResult;
+
+    // 集合元素或Map的value类型
+    final Class<?> elementType;
+
+    private final Expression resultKey;
+
+    private BatchCacheOperation(CacheOperation operation, BatchCacheable batch, ExpressionParser parser) {
+        Method method = operation.method;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Validate.isTrue(batch.index() >= 0 && batch.index() < parameterTypes.length
+                        && Collection.class.isAssignableFrom(parameterTypes[batch.index()]),
+                "parameter %s of %s is not a collection", batch.index(), method);
+        Class<?> returnType = operation.returnType;
+        this.mapResult = returnType.isAssignableFrom(LinkedHashMap.class);
+        Validate.isTrue(mapResult || returnType.isAssignableFrom(ArrayList.class)
+                        || returnType.isAssignableFrom(LinkedHashSet.class),
+                "return type of %s must be List, Set, Collection or Map", method);
+        this.operation = operation;
+        this.index = batch.index();
+        this.elementType = CacheOperation.typeArgument(method.getGenericReturnType(), mapResult ? 1 : 0);
+        this.resultKey = mapResult ? null : parser.parseExpression(batch.resultKey());
+    }
+
+    static BatchCacheOperation of(Method method, String[] parameterNames, String cacheKeyPrefix, BatchCacheable batch,
+                                  ExpressionParser parser) {
+        return new BatchCacheOperation(CacheOperation.of(method, parameterNames, cacheKeyPrefix, batch, parser),
+                batch, parser);
+    }
+
+    /**
+     * 按入参集合的类型创建只包含部分id的集合, 用于以未命中的id调用方法
+     */
+    Collection<Object> newIds(Collection<?> ids, int size) {
+        return ids instanceof Set ? new LinkedHashSet<>(size * 4 / 3 + 1) : new ArrayList<>(size);
+    }
+
+    /**
+     * 将方法返回值拆分为id及其对应的元素
+     */
+    void forEachResult(Object result, ResultConsumer consumer) {
+        if (result == null) {
+            return;
+        }
+        if (mapResult) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (Object element : (Collection<?>) result) {
+                if (element != null) {
+                    consumer.accept(resultKey.getValue(element), element);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按入参id的顺序合并结果
+     * @param values 缓存key及其对应的元素
+     */
+    Object merge(Map<String, Object> idsByKey, Map<String, Object> values) {
+        if (mapResult) {
+            Map<Object, Object> map = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : idsByKey.entrySet()) {
+                Object value = values.get(entry.getKey());
+                if (value != null) {
+                    map.put(entry.getValue(), value);
+                }
+            }
+            return map;
+        }
+        Collection<Object> collection = operation.returnType.isAssignableFrom(ArrayList.class)
+                ? new ArrayList<>(values.size()) : new LinkedHashSet<>(values.size() * 4 / 3 + 1);
+        for (String key : idsByKey.keySet()) {
+            Object value = values.get(key);
+            if (value != null) {
+                collection.add(value);
+            }
+        }
+        return collection;
+    }
+
+    interface ResultConsumer {
+        void accept(Object id, Object element);
+    }
+}
@@ -0,0 +1,45 @@
+package bthulu.commons.combine.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 批量缓存, 用于以id集合为参数批量查询的方法, 如<code>List&lt;User&gt; findByIds(Collection&lt;Long&gt; ids)</code>.
+ *
+ * 每个id单独缓存, key为<code>value:id</code>, 与<code>@Cacheable(value = "user", key = "#id")</code>的单个查询共用缓存.
+ * 先批量查询全部id的缓存, 仅以未命中的id调用方法, 再按入参id的顺序合并结果.
+ * 单个查询开启{@link Cacheable#refresh()}或{@link Cacheable#verifyKey()}时, 批量读取同样解开缓存值的包装,
+ * 超过软过期时间的按未命中重新加载.
+ *
+ * 方法返回值须为List, Set, Collection或以id为key的Map.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface BatchCacheable {
+    /**
+     * 缓存名
+     */
+    String value() default "";
+
+    /**
+     * id集合在方法入参中的下标, 默认为第一个参数
+     */
+    int index() default 0;
+
+    /**
+     * 从返回的集合元素中取得id的spel表达式, 以元素为根对象, 默认为元素的id属性. 返回值为Map时忽略
+     */
+    String resultKey() default "id";
+
+    /**
+     * 超时时间, 单位:秒, 默认60秒
+     */
+    int timeout() default 60;
+
+    /**
+     * 方法未返回的id的缓存超时时间, 单位:秒, 默认0不缓存.
+     * 大于0时未返回的id以null缓存, 再次查询时不再调用方法, 结果中也不包含这些id.
+     */
+    int nullTimeout() default 0;
+}
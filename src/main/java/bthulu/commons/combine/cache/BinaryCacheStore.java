@@ -0,0 +1,60 @@
+package bthulu.commons.combine.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 以byte[]读写缓存的存储, 与{@link CacheCodec}一起通过{@link RedisCacheAdvice#setCacheCodec(CacheCodec, BinaryCacheStore)}设置.
+ *
+ * 实现须线程安全. 只需实现单个读写, 批量及异步接口默认逐个调用单个读写, 建议覆盖为mget, pipeline或非阻塞客户端.
+ */
+public interface BinaryCacheStore {
+
+    /**
+     * 读取缓存, 不存在返回null. 以字符串写入的值(如{@link RedisCacheAdvice#incr(String)}的版本号)须返回其UTF-8字节, 与redis一致
+     */
+    byte[] getBytes(String key);
+
+    /**
+     * 写入缓存
+     * @param seconds 超时时间, 单位:秒
+     */
+    void setex(String key, long seconds, byte[] value);
+
+    /**
+     * 批量读取缓存, 返回值与keys一一对应, 不存在的为null. 默认逐个调用{@link #getBytes(String)}
+     */
+    default List<byte[]> mgetBytes(List<String> keys) {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(getBytes(key));
+        }
+        return values;
+    }
+
+    /**
+     * 批量写入超时时间相同的缓存, 默认逐个调用{@link #setex(String, long, byte[])}
+     */
+    default void msetexBytes(Map<String, byte[]> keyValues, long seconds) {
+        for (Map.Entry<String, byte[]> entry : keyValues.entrySet()) {
+            setex(entry.getKey(), seconds, entry.getValue());
+        }
+    }
+
+    /**
+     * 异步读取缓存, 默认在调用线程中执行{@link #getBytes(String)}
+     */
+    default CompletableFuture<byte[]> getBytesAsync(String key) {
+        return CompletableFuture.completedFuture(getBytes(key));
+    }
+
+    /**
+     * 异步写入缓存, 默认在调用线程中执行{@link #setex(String, long, byte[])}
+     */
+    default CompletableFuture<Void> setexAsync(String key, long seconds, byte[] value) {
+        setex(key, seconds, value);
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,94 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的布隆过滤器, 用于判定缓存key对应的数据一定不存在.
+ *
+ * mightContain返回false时数据一定不存在, 返回true时存在一定的误判率. 不支持删除.
+ * 以64位FNV-1a散列值的高低32位做双重散列, 生成k个bit位.
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预期元素个数
+     * @param fpp                预期误判率, 在0-1之间, 如0.01
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        Validate.isTrue(expectedInsertions > 0, "expectedInsertions must > 0");
+        Validate.isTrue(fpp > 0 && fpp < 1, "fpp must between 0 and 1");
+        long size = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (size + 63) >>> 6));
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 加入元素
+     */
+    public void put(String element) {
+        long hash = hash(element);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(hash1, hash2, i);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long value;
+            do {
+                value = bits.get(word);
+                if ((value & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    /**
+     * 元素是否可能存在, 返回false时一定不存在
+     */
+    public boolean mightContain(String element) {
+        long hash = hash(element);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(hash1, hash2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int hash1, int hash2, int i) {
+        long combined = hash1 + (long) i * hash2;
+        return (combined < 0 ? ~combined : combined) % bitSize;
+    }
+
+    private static long hash(String element) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < element.length(); i++) {
+            char c = element.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // FNV的低位分布较差, 再做一次混淆
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
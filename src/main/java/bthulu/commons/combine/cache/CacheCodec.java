@@ -0,0 +1,13 @@
+package bthulu.commons.combine.cache;
+
+/**
+ * 缓存值的二进制编解码, 设置后{@link RedisCacheAdvice}改用byte[]读写缓存.
+ *
+ * 须支持null值的编解码, 以缓存返回null的方法结果.
+ */
+public interface CacheCodec {
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> type);
+}
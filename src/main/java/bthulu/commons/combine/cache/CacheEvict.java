@@ -19,4 +19,15 @@ public @interface CacheEvict {
      * 后续待改为spel表达式
      */
     String key() default "";
+
+    /**
+     * 是否删除缓存名下的全部缓存, 默认false. 为true时忽略{@link #key()}.
+     * 须指定缓存名并开启{@link RedisCacheAdvice#enableNamespaceVersion(long)}, 通过递增版本号实现, 不扫描删除缓存.
+     */
+    boolean allEntries() default false;
+
+    /**
+     * 是否以参数的散列值作为缓存key, 须与对应的{@link Cacheable#hashKey()}一致
+     */
+    boolean hashKey() default false;
 }
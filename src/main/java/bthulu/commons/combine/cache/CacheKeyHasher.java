@@ -0,0 +1,205 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.hash.MurmurHash3;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 将缓存key的参数编码后散列为固定长度的字符串, 用于{@link Cacheable#hashKey()}.
+ *
+ * 1. 参数按类型标记+值的结构写入线程内复用的缓冲区, 基本类型及其包装类, 字符串, 枚举, 日期, 数组, 集合, Map直接编码,
+ * 其他对象编码其toString(), 不再拼接整个key字符串
+ *
+ * 2. 以MurmurHash3 x64 128位散列, 输出为32位十六进制字符串
+ *
+ * 无序的Set, Map与toString()一样按迭代顺序编码, 内容相同但迭代顺序不同时散列值不同.
+ */
+public final class CacheKeyHasher {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 缓冲区超过该长度时用完即释放, 避免线程长期持有大数组
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte SHORT = 4;
+    private static final byte BYTE = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte CHAR = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte FLOAT = 9;
+    private static final byte ENUM = 10;
+    private static final byte DATE = 11;
+    private static final byte ARRAY = 12;
+    private static final byte COLLECTION = 13;
+    private static final byte MAP = 14;
+    private static final byte OBJECT = 15;
+
+    private CacheKeyHasher() {
+    }
+
+    /**
+     * 散列多个参数
+     */
+    public static String hash(Object[] args) {
+        Buffer buffer = BUFFER.get();
+        try {
+            buffer.writeInt(args.length);
+            for (Object arg : args) {
+                buffer.write(arg);
+            }
+            return buffer.hash();
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * 散列单个值
+     */
+    public static String hash(Object value) {
+        Buffer buffer = BUFFER.get();
+        try {
+            buffer.write(value);
+            return buffer.hash();
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private static final class Buffer {
+        byte[] bytes = new byte[256];
+        int size;
+
+        void write(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeByte(INT);
+                writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeLong((Long) value);
+            } else if (value instanceof Short) {
+                writeByte(SHORT);
+                writeInt((Short) value);
+            } else if (value instanceof Byte) {
+                writeByte(BYTE);
+                writeByte((Byte) value);
+            } else if (value instanceof Boolean) {
+                writeByte(BOOLEAN);
+                writeByte((Boolean) value ? 1 : 0);
+            } else if (value instanceof Character) {
+                writeByte(CHAR);
+                writeInt((Character) value);
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Float) {
+                writeByte(FLOAT);
+                writeInt(Float.floatToIntBits((Float) value));
+            } else if (value instanceof Enum) {
+                writeByte(ENUM);
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof Date) {
+                writeByte(DATE);
+                writeLong(((Date) value).getTime());
+            } else if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                writeByte(ARRAY);
+                writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    write(Array.get(value, i));
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                writeByte(COLLECTION);
+                writeInt(collection.size());
+                for (Object element : collection) {
+                    write(element);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    write(entry.getKey());
+                    write(entry.getValue());
+                }
+            } else {
+                writeByte(OBJECT);
+                writeString(value.toString());
+            }
+        }
+
+        void writeString(String s) {
+            int length = s.length();
+            writeInt(length);
+            ensure(length << 1);
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                bytes[size++] = (byte) c;
+                bytes[size++] = (byte) (c >>> 8);
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            bytes[size++] = (byte) v;
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) (v >>> 16);
+            bytes[size++] = (byte) (v >>> 24);
+        }
+
+        void writeLong(long v) {
+            writeInt((int) v);
+            writeInt((int) (v >>> 32));
+        }
+
+        void ensure(int n) {
+            if (size + n > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length << 1, size + n)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+        }
+
+        String hash() {
+            long[] hash = MurmurHash3.hash128(bytes, 0, size, 0);
+            char[] chars = new char[32];
+            toHex(hash[0], chars, 0);
+            toHex(hash[1], chars, 16);
+            return new String(chars);
+        }
+
+        void reset() {
+            size = 0;
+            if (bytes.length > MAX_RETAINED) {
+                bytes = new byte[256];
+            }
+        }
+
+        private static void toHex(long v, char[] chars, int offset) {
+            for (int i = 15; i >= 0; i--) {
+                chars[offset + i] = HEX[(int) (v & 0xf)];
+                v >>>= 4;
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.expression.*;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.regex.Pattern;
+
+/**
+ * 单个缓存方法预先解析好的元数据, 每个{@link Method}仅解析一次.
+ *
+ * 1. 缓存注解的各项属性, 返回值类型, 参数名
+ *
+ * 2. 预先解析的SPEL表达式. 形如<code>#id</code>的单个参数引用直接按下标取参数, 不经过SPEL.
+ * 其余表达式共用一个预先初始化的SPEL上下文, 属性访问器等缓存的反射信息在调用间复用, 每次调用只绑定参数
+ */
+final class CacheOperation {
+
+    private static final Pattern PARAM_REFERENCE = Pattern.compile("#[A-Za-z_$][\\w$]*");
+
+    final Method method;
+
+    final Class<?> returnType;
+
+    // 返回值为CompletableFuture或CompletionStage, 缓存其完成后的结果
+    final boolean async;
+
+    // 缓存值的类型, 异步方法为返回值的类型参数, 否则与returnType相同
+    final Class<?> valueType;
+
+    // 返回值泛型类型的指纹, 含类型参数, 用于校验堆外缓存值
+    final int valueFingerprint;
+
+    final int timeout;
+
+    final int localTimeout;
+
+    final int offHeapTimeout;
+
+    final int syncTimeout;
+
+    final int refresh;
+
+    // 返回null时的超时时间, 单位:秒, 小于0与timeout相同, 0为不缓存null
+    final int nullTimeout;
+
+    // 注解中指定的缓存名, 可能为空
+    final String cacheName;
+
+    // 是否删除整个缓存名下的缓存, 仅用于CacheEvict
+    final boolean allEntries;
+
+    // 是否以参数的散列值作为缓存key
+    final boolean hashKey;
+
+    // 是否在缓存值中保存原始key, 读取时校验, 仅hashKey时有效
+    final boolean verifyKey;
+
+    // 统计, 由RedisCacheAdvice在发布前设置
+    CacheStats stats;
+
+    // 前缀加缓存名, 未指定缓存名时为null, 由目标类名和方法名生成
+    private final String namePrefix;
+
+    private final String cacheKeyPrefix;
+
+    private final String statsName;
+
+    private final String[] parameterNames;
+
+    // 直接引用的参数下标, 为-1时使用keyExpression, keyExpression也为null时拼接全部参数
+    private final int paramIndex;
+
+    private final Expression keyExpression;
+
+    // keyExpression共用的上下文, 初始化后只读, 参数由ArgumentContext按次绑定
+    private final StandardEvaluationContext sharedContext;
+
+    // 最近一次按目标类生成的缓存名前缀
+    private volatile TargetName targetName;
+
+    private CacheOperation(Method method, String[] parameterNames, String cacheKeyPrefix, String cacheName,
+                           String key, ExpressionParser parser, int timeout, int localTimeout, int offHeapTimeout,
+                           int syncTimeout, int refresh, int nullTimeout, boolean allEntries, boolean hashKey, boolean verifyKey) {
+        this.method = method;
+        this.returnType = method.getReturnType();
+        this.async = CompletionStage.class.isAssignableFrom(returnType)
+                && returnType.isAssignableFrom(CompletableFuture.class);
+        this.valueType = async ? typeArgument(method.getGenericReturnType(), 0) : returnType;
+        this.valueFingerprint = ClassFingerprint.of(method.getGenericReturnType());
+        this.parameterNames = parameterNames;
+        this.cacheKeyPrefix = cacheKeyPrefix;
+        this.namePrefix = cacheName.isEmpty() ? null : cacheKeyPrefix + cacheName;
+        this.timeout = timeout;
+        this.localTimeout = localTimeout;
+        this.offHeapTimeout = offHeapTimeout;
+        this.syncTimeout = syncTimeout;
+        this.refresh = refresh;
+        this.nullTimeout = nullTimeout;
+        this.cacheName = cacheName;
+        this.statsName = cacheName.isEmpty()
+                ? method.getDeclaringClass().getSimpleName() + ":" + method.getName() : cacheName;
+        this.allEntries = allEntries;
+        this.hashKey = hashKey;
+        this.verifyKey = hashKey && verifyKey;
+        int index = -1;
+        Expression expression = null;
+        if (!key.isEmpty()) {
+            index = PARAM_REFERENCE.matcher(key).matches() ? indexOf(parameterNames, key.substring(1)) : -1;
+            if (index < 0) {
+                expression = parser.parseExpression(key);
+            }
+        }
+        this.paramIndex = index;
+        this.keyExpression = expression;
+        this.sharedContext = expression == null ? null : newSharedContext();
+    }
+
+    static CacheOperation of(Method method, String[] parameterNames, String cacheKeyPrefix, Cacheable cacheable,
+                             ExpressionParser parser) {
+        Validate.isTrue(cacheable.refresh() <= 0 || cacheable.timeout() <= 0 || cacheable.refresh() < cacheable.timeout(),
+                "refresh must < timeout: %s", method);
+        return new CacheOperation(method, parameterNames, cacheKeyPrefix, cacheable.value(), cacheable.key(), parser,
+                cacheable.timeout(), cacheable.localTimeout(), cacheable.offHeapTimeout(),
+                cacheable.sync() ? cacheable.syncTimeout() : 0, cacheable.refresh(),
+                cacheable.nullTimeout(), false, cacheable.hashKey(), cacheable.verifyKey());
+    }
+
+    static CacheOperation of(Method method, String[] parameterNames, String cacheKeyPrefix, CacheEvict evict,
+                             ExpressionParser parser) {
+        return new CacheOperation(method, parameterNames, cacheKeyPrefix, evict.value(), evict.key(), parser,
+                0, 0, 0, 0, 0, 0, evict.allEntries(), evict.hashKey(), false);
+    }
+
+    static CacheOperation of(Method method, String[] parameterNames, String cacheKeyPrefix, BatchCacheable batch,
+                             ExpressionParser parser) {
+        return new CacheOperation(method, parameterNames, cacheKeyPrefix, batch.value(), "", parser,
+                batch.timeout(), 0, 0, 0, 0, batch.nullTimeout(), false, false, false);
+    }
+
+    /**
+     * 缓存key的命名空间, 即前缀加缓存名, 开启命名空间版本时再加上<code>:v版本号</code>
+     * @param generation 命名空间版本号, 小于0为未开启
+     */
+    String namespace(Object target, long generation) {
+        String prefix = namePrefix(target);
+        return generation < 0 ? prefix : prefix + ":v" + generation;
+    }
+
+    /**
+     * 生成单个id的缓存key, 用于批量缓存
+     */
+    String elementKey(String namespace, Object id) {
+        return namespace + ":" + id;
+    }
+
+    /**
+     * 生成完整的缓存key
+     */
+    String key(String namespace, String suffix) {
+        return namespace.concat(suffix);
+    }
+
+    /**
+     * 缓存key中命名空间之后的部分, 以冒号开头, 无参数且未指定key时为空字符串.
+     * hashKey时为参数或key表达式值的散列值
+     */
+    String keySuffix(Object[] args) {
+        if (!hashKey) {
+            return rawKeySuffix(args);
+        }
+        if (paramIndex >= 0) {
+            return ":" + CacheKeyHasher.hash(args[paramIndex]);
+        } else if (keyExpression == null) {
+            return args.length == 0 ? "" : ":" + CacheKeyHasher.hash(args);
+        }
+        return ":" + CacheKeyHasher.hash(evaluate(args));
+    }
+
+    /**
+     * 未散列的缓存key后缀, 即以冒号拼接的参数或key表达式的值, 用于布隆过滤器及hashKey时的原始key
+     */
+    String rawKeySuffix(Object[] args) {
+        StringBuilder cacheKey = new StringBuilder();
+        if (paramIndex >= 0) {
+            cacheKey.append(":").append(args[paramIndex]);
+        } else if (keyExpression == null) {
+            for (Object arg : args) {
+                cacheKey.append(":").append(arg);
+            }
+        } else {
+            cacheKey.append(":").append(evaluate(args));
+        }
+        return cacheKey.toString();
+    }
+
+    /**
+     * 判定数据不存在时的返回值, 返回Optional的方法为Optional.empty(), 其余为null. 异步方法以该值完成
+     */
+    Object absentResult() {
+        Object value = valueType == Optional.class ? Optional.empty() : null;
+        return async ? CompletableFuture.completedFuture(value) : value;
+    }
+
+    /**
+     * 统计使用的缓存名, 未指定缓存名时为声明类名:方法名
+     */
+    String statsName() {
+        return statsName;
+    }
+
+    private Object evaluate(Object[] args) {
+        return keyExpression.getValue(new ArgumentContext(sharedContext, parameterNames, args));
+    }
+
+    // 提前初始化延迟创建的访问器及解析器, 之后多线程只读
+    private static StandardEvaluationContext newSharedContext() {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.getPropertyAccessors();
+        context.getConstructorResolvers();
+        context.getMethodResolvers();
+        context.getTypeLocator();
+        context.getTypeConverter();
+        return context;
+    }
+
+    private String namePrefix(Object target) {
+        if (namePrefix != null) {
+            return namePrefix;
+        }
+        Class<?> targetClass = target.getClass();
+        TargetName name = targetName;
+        if (name == null || name.targetClass != targetClass) {
+            name = new TargetName(targetClass, cacheKeyPrefix + targetClass.getSimpleName() + ":" + method.getName());
+            targetName = name;
+        }
+        return name.prefix;
+    }
+
+    /**
+     * 泛型类型的第index个类型参数, 无法确定时返回Object.class
+     */
+    static Class<?> typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) {
+                Type argument = arguments[index];
+                if (argument instanceof ParameterizedType) {
+                    argument = ((ParameterizedType) argument).getRawType();
+                }
+                if (argument instanceof Class) {
+                    return (Class<?>) argument;
+                }
+            }
+        }
+        return Object.class;
+    }
+
+    private static int indexOf(String[] parameterNames, String name) {
+        if (parameterNames != null) {
+            for (int i = 0; i < parameterNames.length; i++) {
+                if (name.equals(parameterNames[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 单次求值的上下文, 变量按参数名取自本次调用的参数, 其余均委托给共用的上下文
+     */
+    private static final class ArgumentContext implements EvaluationContext {
+        private final EvaluationContext shared;
+        private final String[] parameterNames;
+        private final Object[] args;
+        // 表达式中赋值的变量, 极少使用, 按需创建
+        private Map<String, Object> variables;
+
+        ArgumentContext(EvaluationContext shared, String[] parameterNames, Object[] args) {
+            this.shared = shared;
+            this.parameterNames = parameterNames;
+            this.args = args;
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            if (variables != null && variables.containsKey(name)) {
+                return variables.get(name);
+            }
+            int index = indexOf(parameterNames, name);
+            return index >= 0 && index < args.length ? args[index] : null;
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            if (variables == null) {
+                variables = new HashMap<>();
+            }
+            variables.put(name, value);
+        }
+
+        @Override
+        public TypedValue getRootObject() {
+            return shared.getRootObject();
+        }
+
+        @Override
+        public List<PropertyAccessor> getPropertyAccessors() {
+            return shared.getPropertyAccessors();
+        }
+
+        @Override
+        public List<ConstructorResolver> getConstructorResolvers() {
+            return shared.getConstructorResolvers();
+        }
+
+        @Override
+        public List<MethodResolver> getMethodResolvers() {
+            return shared.getMethodResolvers();
+        }
+
+        @Override
+        public BeanResolver getBeanResolver() {
+            return shared.getBeanResolver();
+        }
+
+        @Override
+        public TypeLocator getTypeLocator() {
+            return shared.getTypeLocator();
+        }
+
+        @Override
+        public TypeConverter getTypeConverter() {
+            return shared.getTypeConverter();
+        }
+
+        @Override
+        public TypeComparator getTypeComparator() {
+            return shared.getTypeComparator();
+        }
+
+        @Override
+        public OperatorOverloader getOperatorOverloader() {
+            return shared.getOperatorOverloader();
+        }
+    }
+
+    private static final class TargetName {
+        final Class<?> targetClass;
+        final String prefix;
+
+        TargetName(Class<?> targetClass, String prefix) {
+            this.targetClass = targetClass;
+            this.prefix = prefix;
+        }
+    }
+}
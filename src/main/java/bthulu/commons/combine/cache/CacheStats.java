@@ -0,0 +1,166 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.concurrent.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存名的统计, 计数均为{@link LongAdder}, 耗时为{@link LatencyHistogram}, 记录时无锁竞争.
+ */
+public class CacheStats {
+
+    final LongAdder hits = new LongAdder();
+
+    // 近端缓存及热点key本地副本的命中数
+    final LongAdder localHits = new LongAdder();
+
+    final LongAdder offHeapHits = new LongAdder();
+
+    final LongAdder misses = new LongAdder();
+
+    final LongAdder errors = new LongAdder();
+
+    final LongAdder evictions = new LongAdder();
+
+    // 熔断或读取超时时跳过缓存的次数
+    final LongAdder bypasses = new LongAdder();
+
+    // 读取缓存的耗时
+    final LatencyHistogram readLatency = new LatencyHistogram();
+
+    // 执行切面方法的耗时
+    final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    // 序列化及反序列化的耗时
+    final LatencyHistogram serializeLatency = new LatencyHistogram();
+
+    private final String name;
+
+    CacheStats(String name) {
+        this.name = name;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public static class Snapshot {
+
+        private final String name;
+
+        private final long hitCount;
+
+        private final long localHitCount;
+
+        private final long offHeapHitCount;
+
+        private final long missCount;
+
+        private final long errorCount;
+
+        private final long evictionCount;
+
+        private final long bypassCount;
+
+        private final LatencyHistogram.Snapshot readLatency;
+
+        private final LatencyHistogram.Snapshot loadLatency;
+
+        private final LatencyHistogram.Snapshot serializeLatency;
+
+        Snapshot(CacheStats stats) {
+            this.name = stats.name;
+            this.hitCount = stats.hits.sum();
+            this.localHitCount = stats.localHits.sum();
+            this.offHeapHitCount = stats.offHeapHits.sum();
+            this.missCount = stats.misses.sum();
+            this.errorCount = stats.errors.sum();
+            this.evictionCount = stats.evictions.sum();
+            this.bypassCount = stats.bypasses.sum();
+            this.readLatency = stats.readLatency.snapshot();
+            this.loadLatency = stats.loadLatency.snapshot();
+            this.serializeLatency = stats.serializeLatency.snapshot();
+        }
+
+        /**
+         * 缓存名, 未指定缓存名时为类名:方法名
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 远端缓存命中数, 不含近端缓存及堆外缓存命中
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * 近端缓存命中数, 含热点key本地副本命中
+         */
+        public long getLocalHitCount() {
+            return localHitCount;
+        }
+
+        /**
+         * 堆外缓存命中数
+         */
+        public long getOffHeapHitCount() {
+            return offHeapHitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * 读写缓存出错数
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * 删除缓存数
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * 因熔断或读取超时跳过缓存, 直接执行方法的次数
+         */
+        public long getBypassCount() {
+            return bypassCount;
+        }
+
+        /**
+         * 命中率, 含近端缓存及堆外缓存命中
+         */
+        public double getHitRate() {
+            long hits = hitCount + localHitCount + offHeapHitCount;
+            long requests = hits + missCount;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        public LatencyHistogram.Snapshot getReadLatency() {
+            return readLatency;
+        }
+
+        public LatencyHistogram.Snapshot getLoadLatency() {
+            return loadLatency;
+        }
+
+        public LatencyHistogram.Snapshot getSerializeLatency() {
+            return serializeLatency;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{hit=" + hitCount + ", localHit=" + localHitCount + ", offHeapHit=" + offHeapHitCount
+                    + ", miss=" + missCount + ", error=" + errorCount + ", eviction=" + evictionCount + ", bypass=" + bypassCount
+                    + ", read=[" + readLatency + "], load=[" + loadLatency + "], serialize=[" + serializeLatency + "]}";
+        }
+    }
+}
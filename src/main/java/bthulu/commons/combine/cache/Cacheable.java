@@ -22,4 +22,58 @@ public @interface Cacheable {
      * 超时时间, 单位:秒, 默认60秒
      */
     int timeout() default 60;
+
+    /**
+     * 近端缓存超时时间, 单位:秒, 默认0不启用近端缓存.
+     * 需先通过{@link RedisCacheAdvice#setNearCache(NearCache)}设置近端缓存, 超过{@link #timeout()}时以timeout为准.
+     * 近端缓存直接返回缓存的对象实例, 仅用于返回值不会被修改的方法.
+     * 多节点部署时须设置{@link RedisCacheAdvice#setInvalidationChannel}, 否则其他节点删除缓存后本节点最多在localTimeout后才读到新值.
+     */
+    int localTimeout() default 0;
+
+    /**
+     * 堆外缓存超时时间, 单位:秒, 默认0不启用堆外缓存.
+     * 需先通过{@link RedisCacheAdvice#setOffHeapStore(OffHeapCacheStore)}设置堆外存储, 超过{@link #timeout()}时以timeout为准.
+     * 堆外缓存保存序列化后的值, 每次命中都重新反序列化, 适用于体积较大, 不宜常驻堆内的返回值. 失效方式与近端缓存相同.
+     */
+    int offHeapTimeout() default 0;
+
+    /**
+     * 缓存未命中时是否合并并发请求, 默认false.
+     * 为true时同一JVM内同一key仅有一个线程执行方法, 其余线程等待其结果, 等待超过{@link #syncTimeout()}则自行执行方法.
+     */
+    boolean sync() default false;
+
+    /**
+     * 合并请求时的最长等待时间, 单位:毫秒, 默认3000毫秒.
+     * 返回CompletableFuture或CompletionStage的方法不等待, 其余调用直接共享首个调用的结果
+     */
+    int syncTimeout() default 3000;
+
+    /**
+     * 提前刷新时间, 单位:秒, 默认0不提前刷新, 须小于{@link #timeout()}.
+     * 缓存写入超过该时间后仍返回旧值, 同时在后台执行一次方法刷新缓存, {@link #timeout()}仍为缓存的最终过期时间.
+     * 临近刷新时间时按XFetch算法以一定概率提前刷新, 避免同一批写入的缓存集中刷新.
+     * 后台刷新不在调用方线程中执行, 方法不能依赖ThreadLocal中的上下文.
+     */
+    int refresh() default 0;
+
+    /**
+     * 方法返回null时的缓存超时时间, 单位:秒, 默认-1与{@link #timeout()}相同, 0为不缓存null.
+     * 查询不存在的数据时, 以较短的超时时间缓存null结果, 避免每次都穿透到数据库.
+     */
+    int nullTimeout() default -1;
+
+    /**
+     * 是否以参数的128位散列值作为缓存key, 默认false.
+     * 参数为DTO, 集合等toString()较长的对象时, 缓存key固定为<code>value:32位十六进制散列值</code>, 见{@link CacheKeyHasher}.
+     * 对应的{@link CacheEvict#hashKey()}须同样设置为true. 布隆过滤器仍以未散列的key判定.
+     */
+    boolean hashKey() default false;
+
+    /**
+     * 是否在缓存值中保存原始key, 读取时校验, 不一致视为未命中, 默认false, 仅{@link #hashKey()}时有效.
+     * 用于完全排除散列碰撞, 代价是缓存值中多保存一份原始key. 近端缓存以散列后的key读写, 不做校验.
+     */
+    boolean verifyKey() default false;
 }
@@ -0,0 +1,116 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.hash.MurmurHash3;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 类结构的指纹, 用于识别由不兼容的类版本序列化的缓存值.
+ *
+ * 1. 声明了serialVersionUID的类以类名及serialVersionUID计算, 由使用方显式控制版本
+ *
+ * 2. 否则以类名及自身和父类的全部非static, 非transient字段的名称和类型计算, 字段增删或改变类型后指纹变化
+ *
+ * 3. JDK自带的类只以类名计算, 避免升级JDK后全部失效
+ *
+ * 4. 泛型类型由原始类型及各类型参数的指纹组合, 如<code>List&lt;Dto&gt;</code>, <code>Map&lt;Long, Dto&gt;</code>在Dto变化后指纹随之变化.
+ * 数组类型以元素类型计算. 类型变量以其上界的原始类型计算
+ */
+final class ClassFingerprint {
+
+    private static final ClassValue<Integer> FINGERPRINTS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return compute(type);
+        }
+    };
+
+    private ClassFingerprint() {
+    }
+
+    static int of(Class<?> type) {
+        return FINGERPRINTS.get(type);
+    }
+
+    /**
+     * 泛型类型的指纹, 通常为方法的{@link java.lang.reflect.Method#getGenericReturnType()}
+     */
+    static int of(Type type) {
+        if (type instanceof Class) {
+            Class<?> c = (Class<?>) type;
+            return c.isArray() ? 31 * of(c.getComponentType()) + '[' : of(c);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            int fingerprint = of(parameterized.getRawType());
+            for (Type argument : parameterized.getActualTypeArguments()) {
+                fingerprint = 31 * fingerprint + of(argument);
+            }
+            return fingerprint;
+        }
+        if (type instanceof GenericArrayType) {
+            return 31 * of(((GenericArrayType) type).getGenericComponentType()) + '[';
+        }
+        if (type instanceof WildcardType) {
+            WildcardType wildcard = (WildcardType) type;
+            Type[] lowerBounds = wildcard.getLowerBounds();
+            return of(lowerBounds.length > 0 ? lowerBounds[0] : wildcard.getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable) {
+            // 只取上界的原始类型, 避免T extends Comparable<T>等递归定义
+            Type bound = ((TypeVariable<?>) type).getBounds()[0];
+            return of(bound instanceof ParameterizedType ? ((ParameterizedType) bound).getRawType() : bound);
+        }
+        return of(Object.class);
+    }
+
+    private static int compute(Class<?> type) {
+        StringBuilder description = new StringBuilder(type.getName());
+        if (type.getClassLoader() != null && !type.isInterface()) {
+            Long serialVersionUID = declaredSerialVersionUID(type);
+            if (serialVersionUID != null) {
+                description.append('#').append(serialVersionUID);
+            } else {
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    List<String> fields = new ArrayList<>();
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            fields.add(field.getName() + ':' + field.getGenericType().getTypeName());
+                        }
+                    }
+                    // getDeclaredFields()不保证顺序
+                    fields.sort(null);
+                    description.append('|').append(c.getName());
+                    for (String field : fields) {
+                        description.append(',').append(field);
+                    }
+                }
+            }
+        }
+        long[] hash = MurmurHash3.hash128(description.toString().getBytes(StandardCharsets.UTF_8));
+        return (int) (hash[0] ^ (hash[0] >>> 32));
+    }
+
+    private static Long declaredSerialVersionUID(Class<?> type) {
+        try {
+            Field field = type.getDeclaredField("serialVersionUID");
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType() != long.class) {
+                return null;
+            }
+            field.setAccessible(true);
+            return field.getLong(null);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.concurrent.Sampler;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按缓存名统计访问最多的缓存key.
+ *
+ * 1. 以{@link Sampler}采样, 采样到的key按Space-Saving算法计数, 每个缓存名只保留固定个数的计数器,
+ * 计数器已满时替换计数最小的key, 新key继承其计数并记为误差
+ *
+ * 2. 按时间窗口统计, 窗口结束时保留该窗口的top-N及热点key, 并重新计数. 访问量扣除误差后仍超过窗口内总访问量的hotShare时为热点key
+ *
+ * 3. 报告的访问量为按采样率放大后的估算值
+ */
+public class HotKeyDetector {
+
+    private final Sampler sampler;
+
+    private final double scale;
+
+    private final int topN;
+
+    // 每个缓存名的计数器个数, 多于topN以减小误差
+    private final int capacity;
+
+    private final long windowMillis;
+
+    private final double hotShare;
+
+    private final ConcurrentHashMap<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+    /**
+     * @param samplePercent 采样率, 0-100
+     * @param topN          每个缓存名报告的key个数
+     * @param windowMillis  统计窗口, 单位:毫秒
+     * @param hotShare      热点key的最小访问占比, 0-1
+     */
+    public HotKeyDetector(double samplePercent, int topN, long windowMillis, double hotShare) {
+        Validate.isTrue(samplePercent > 0 && samplePercent <= 100, "samplePercent must in (0, 100]");
+        Validate.isTrue(topN > 0, "topN must > 0");
+        Validate.isTrue(windowMillis > 0, "windowMillis must > 0");
+        Validate.isTrue(hotShare > 0 && hotShare <= 1, "hotShare must in (0, 1]");
+        this.sampler = Sampler.create(samplePercent);
+        this.scale = 100 / samplePercent;
+        this.topN = topN;
+        this.capacity = topN * 4;
+        this.windowMillis = windowMillis;
+        this.hotShare = hotShare;
+    }
+
+    /**
+     * 记录一次访问, 按采样率决定是否计数
+     */
+    public void record(String cacheName, String key) {
+        if (sampler.select()) {
+            trackers.computeIfAbsent(cacheName, k -> new Tracker()).add(key, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 是否为上一个统计窗口的热点key, 上一个窗口已结束超过一个窗口时间(即期间没有访问)时返回false
+     */
+    public boolean isHot(String cacheName, String key) {
+        Tracker tracker = trackers.get(cacheName);
+        if (tracker == null) {
+            return false;
+        }
+        Window window = tracker.last;
+        return window != null && window.hotKeys.contains(key)
+                && System.currentTimeMillis() - window.endAt < windowMillis;
+    }
+
+    /**
+     * 上一个统计窗口中指定缓存名的top-N, 按访问量从大到小排序
+     */
+    public List<HotKey> getTopKeys(String cacheName) {
+        Tracker tracker = trackers.get(cacheName);
+        Window window = tracker == null ? null : tracker.last;
+        return window == null ? Collections.emptyList() : window.topKeys;
+    }
+
+    /**
+     * 上一个统计窗口中各缓存名的top-N, 按缓存名排序
+     */
+    public Map<String, List<HotKey>> getTopKeys() {
+        Map<String, List<HotKey>> topKeys = new TreeMap<>();
+        for (Map.Entry<String, Tracker> entry : trackers.entrySet()) {
+            Window window = entry.getValue().last;
+            if (window != null) {
+                topKeys.put(entry.getKey(), window.topKeys);
+            }
+        }
+        return topKeys;
+    }
+
+    public static class HotKey {
+        private final String key;
+        private final long count;
+        private final long error;
+        private final double share;
+        private final boolean hot;
+
+        HotKey(String key, long count, long error, double share, boolean hot) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.share = share;
+            this.hot = hot;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 估算的访问量, 可能偏大, 偏大的部分不超过{@link #getError()}
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * 占窗口内总访问量的比例
+         */
+        public double getShare() {
+            return share;
+        }
+
+        public boolean isHot() {
+            return hot;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + (hot ? "(hot)" : "");
+        }
+    }
+
+    private static final class Counter {
+        final String key;
+        long count;
+        long error;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static final class Window {
+        final List<HotKey> topKeys;
+        final Set<String> hotKeys;
+        final long endAt;
+
+        Window(List<HotKey> topKeys, Set<String> hotKeys, long endAt) {
+            this.topKeys = topKeys;
+            this.hotKeys = hotKeys;
+            this.endAt = endAt;
+        }
+    }
+
+    // 单个缓存名的Space-Saving计数, 仅采样到的访问加锁, 计数器已满时O(capacity)查找最小计数
+    private final class Tracker {
+        private final Map<String, Counter> counters = new HashMap<>();
+        private long total;
+        private long windowStart = System.currentTimeMillis();
+        volatile Window last;
+
+        synchronized void add(String key, long now) {
+            if (now - windowStart >= windowMillis) {
+                last = rotate(now);
+            }
+            total++;
+            Counter counter = counters.get(key);
+            if (counter != null) {
+                counter.count++;
+            } else if (counters.size() < capacity) {
+                counters.put(key, new Counter(key, 1, 0));
+            } else {
+                Counter min = null;
+                for (Counter c : counters.values()) {
+                    if (min == null || c.count < min.count) {
+                        min = c;
+                    }
+                }
+                counters.remove(min.key);
+                counters.put(key, new Counter(key, min.count + 1, min.count));
+            }
+        }
+
+        private Window rotate(long now) {
+            List<Counter> sorted = new ArrayList<>(counters.values());
+            sorted.sort((a, b) -> Long.compare(b.count, a.count));
+            List<HotKey> topKeys = new ArrayList<>(Math.min(topN, sorted.size()));
+            Set<String> hotKeys = new HashSet<>();
+            for (int i = 0; i < sorted.size() && i < topN; i++) {
+                Counter c = sorted.get(i);
+                boolean hot = c.count - c.error >= hotShare * total;
+                if (hot) {
+                    hotKeys.add(c.key);
+                }
+                topKeys.add(new HotKey(c.key, Math.round(c.count * scale), Math.round(c.error * scale),
+                        (double) c.count / total, hot));
+            }
+            counters.clear();
+            total = 0;
+            windowStart = now;
+            return new Window(Collections.unmodifiableList(topKeys), hotKeys, now);
+        }
+    }
+}
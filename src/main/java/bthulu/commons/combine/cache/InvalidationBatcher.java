@@ -0,0 +1,186 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量发布近端缓存失效消息.
+ *
+ * 1. 业务线程只负责加入待发布集合, 由后台线程每batchMillis毫秒或积累batchSize个key时发布一次, 同一批次内重复的key只发布一次
+ *
+ * 2. 待发布的key超过maxPending个时合并为{@link InvalidationChannel#ALL}, 避免大量删除缓存时消息堆积
+ *
+ * 3. 关闭时发布剩余的key
+ */
+public class InvalidationBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBatcher.class);
+
+    private final InvalidationChannel channel;
+
+    private final long batchMillis;
+
+    private final int batchSize;
+
+    private final int maxPending;
+
+    private final Object lock = new Object();
+
+    // 待发布的key, 由lock保护
+    private Set<String> pending = new LinkedHashSet<>();
+
+    private boolean all;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final LongAdder offered = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param channel     失效通道
+     * @param batchMillis 最长发布间隔, 单位:毫秒
+     * @param batchSize   单条消息的最大key个数, 积累到该个数时立即发布
+     * @param maxPending  待发布key的上限, 超过时合并为清空全部近端缓存
+     */
+    public InvalidationBatcher(InvalidationChannel channel, long batchMillis, int batchSize, int maxPending) {
+        Validate.notNull(channel, "channel is null");
+        Validate.isTrue(batchMillis > 0, "batchMillis must > 0");
+        Validate.isTrue(batchSize > 0, "batchSize must > 0");
+        Validate.isTrue(maxPending >= batchSize, "maxPending must >= batchSize");
+        this.channel = channel;
+        this.batchMillis = batchMillis;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.worker = new Thread(this::run, "cache-invalidation");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 加入待发布集合
+     */
+    public void offer(String key) {
+        offered.increment();
+        synchronized (lock) {
+            if (all || !pending.add(key)) {
+                coalesced.increment();
+                return;
+            }
+            if (pending.size() > maxPending) {
+                coalesced.add(pending.size());
+                pending.clear();
+                all = true;
+            }
+            if (pending.size() >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 停止后台线程, 并发布剩余的key
+     */
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public long getOffered() {
+        return offered.sum();
+    }
+
+    /**
+     * 因重复或合并为全部失效而未单独发布的key个数
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * 已发布的消息数
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * 发布出错的消息数
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                synchronized (lock) {
+                    if (!all && pending.size() < batchSize) {
+                        lock.wait(batchMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // close()时中断, 由running控制退出
+                continue;
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        Set<String> keys;
+        synchronized (lock) {
+            if (all) {
+                keys = Collections.singleton(InvalidationChannel.ALL);
+                all = false;
+            } else if (pending.isEmpty()) {
+                return;
+            } else {
+                keys = pending;
+            }
+            pending = new LinkedHashSet<>();
+        }
+        List<String> batch = new ArrayList<>(Math.min(keys.size(), batchSize));
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == batchSize) {
+                publish(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            publish(batch);
+        }
+    }
+
+    private void publish(List<String> batch) {
+        try {
+            channel.publish(batch);
+            published.increment();
+        } catch (Throwable t) {
+            failed.increment();
+            log.warn("发布缓存失效消息出错", t);
+        }
+    }
+}
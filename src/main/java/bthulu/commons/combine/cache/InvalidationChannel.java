@@ -0,0 +1,27 @@
+package bthulu.commons.combine.cache;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * 跨节点的近端缓存失效通道, 如基于Redis pub/sub或消息队列实现, 见{@link RedisCacheAdvice#setInvalidationChannel}.
+ *
+ * 一条消息为一批缓存key, 须投递给所有节点(包括发送方)的订阅者, 允许丢失或重复, 丢失时近端缓存最多在localTimeout后过期.
+ */
+public interface InvalidationChannel {
+
+    /**
+     * 代表全部缓存key, 收到后清空近端缓存
+     */
+    String ALL = "*";
+
+    /**
+     * 发布一批失效的缓存key
+     */
+    void publish(Collection<String> keys);
+
+    /**
+     * 订阅失效消息, 回调可能在通道的IO线程中执行, 不应阻塞
+     */
+    void subscribe(Consumer<Collection<String>> listener);
+}
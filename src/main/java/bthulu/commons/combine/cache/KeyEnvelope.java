@@ -0,0 +1,102 @@
+package bthulu.commons.combine.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 散列缓存key的缓存值外层包装, 在序列化后的缓存值前附加原始key, 用于{@link Cacheable#verifyKey()}.
+ *
+ * 字符串格式为<code>\u0003原始key长度:原始key原值</code>, byte[]格式为3字节标记+4字节原始key长度+UTF-8原始key+原值.
+ * 位于{@link RefreshEnvelope}之外.
+ */
+final class KeyEnvelope {
+
+    private static final char STRING_MARK = '\u0003';
+
+    private static final byte[] BYTES_MARK = "\u0003KE".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int BYTES_HEADER = BYTES_MARK.length + 4;
+
+    private KeyEnvelope() {
+    }
+
+    static Object wrap(Object serialized, String originalKey) {
+        if (serialized instanceof byte[]) {
+            byte[] value = (byte[]) serialized;
+            byte[] key = originalKey.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(BYTES_HEADER + key.length + value.length);
+            buffer.put(BYTES_MARK).putInt(key.length).put(key).put(value);
+            return buffer.array();
+        }
+        return STRING_MARK + Integer.toString(originalKey.length()) + ':' + originalKey + serialized;
+    }
+
+    /**
+     * 是否为包装后的缓存值
+     */
+    static boolean isWrapped(Object serialized) {
+        if (serialized instanceof byte[]) {
+            byte[] value = (byte[]) serialized;
+            if (value.length < BYTES_HEADER) {
+                return false;
+            }
+            for (int i = 0; i < BYTES_MARK.length; i++) {
+                if (value[i] != BYTES_MARK[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        String value = (String) serialized;
+        return !value.isEmpty() && value.charAt(0) == STRING_MARK;
+    }
+
+    /**
+     * 校验原始key并返回原值, 未包装或原始key不一致时返回null
+     */
+    static Object unwrap(Object serialized, String originalKey) {
+        if (serialized instanceof byte[]) {
+            byte[] value = (byte[]) serialized;
+            if (value.length < BYTES_HEADER) {
+                return null;
+            }
+            for (int i = 0; i < BYTES_MARK.length; i++) {
+                if (value[i] != BYTES_MARK[i]) {
+                    return null;
+                }
+            }
+            int keyLength = ByteBuffer.wrap(value, BYTES_MARK.length, 4).getInt();
+            if (keyLength < 0 || keyLength > value.length - BYTES_HEADER) {
+                return null;
+            }
+            String key = new String(value, BYTES_HEADER, keyLength, StandardCharsets.UTF_8);
+            if (!key.equals(originalKey)) {
+                return null;
+            }
+            int offset = BYTES_HEADER + keyLength;
+            byte[] payload = new byte[value.length - offset];
+            System.arraycopy(value, offset, payload, 0, payload.length);
+            return payload;
+        }
+        String value = (String) serialized;
+        if (value.isEmpty() || value.charAt(0) != STRING_MARK) {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        int keyLength;
+        try {
+            keyLength = Integer.parseInt(value.substring(1, colon));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int end = colon + 1 + keyLength;
+        if (keyLength != originalKey.length() || end > value.length()
+                || !value.startsWith(originalKey, colon + 1)) {
+            return null;
+        }
+        return value.substring(end);
+    }
+}
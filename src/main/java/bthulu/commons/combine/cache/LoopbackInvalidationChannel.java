@@ -0,0 +1,59 @@
+package bthulu.commons.combine.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 同一JVM内的失效通道, 在发布线程中同步投递给全部订阅者, 用于单机部署及以多个切面实例模拟多节点的测试.
+ */
+public class LoopbackInvalidationChannel implements InvalidationChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(LoopbackInvalidationChannel.class);
+
+    private final List<Consumer<Collection<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder messages = new LongAdder();
+
+    private final LongAdder keys = new LongAdder();
+
+    @Override
+    public void publish(Collection<String> keys) {
+        Collection<String> message = Collections.unmodifiableList(new ArrayList<>(keys));
+        this.messages.increment();
+        this.keys.add(message.size());
+        for (Consumer<Collection<String>> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (Throwable t) {
+                log.warn("处理缓存失效消息出错", t);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Collection<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 已发布的消息数
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * 已发布的缓存key个数
+     */
+    public long getKeyCount() {
+        return keys.sum();
+    }
+}
@@ -0,0 +1,70 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.text.Jackson;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以{@link MemoryCacheStore}为存储的缓存切面, 以Jackson序列化, 用于单机部署, 测试及不依赖Redis的压测.
+ * 支持{@link #setCacheCodec(CacheCodec)}及{@link #enableNamespaceVersion(long)}, 二进制格式同样以{@link MemoryCacheStore}为存储.
+ */
+@Aspect
+public class MemoryCacheAdvice extends RedisCacheAdvice {
+
+    private final MemoryCacheStore store;
+
+    /**
+     * @param maxWeight 最大估算字节数, 见{@link MemoryCacheStore#MemoryCacheStore(long)}
+     */
+    public MemoryCacheAdvice(String cacheKeyPrefix, long maxWeight) {
+        this(cacheKeyPrefix, new MemoryCacheStore(maxWeight));
+    }
+
+    public MemoryCacheAdvice(String cacheKeyPrefix, MemoryCacheStore store) {
+        super(cacheKeyPrefix);
+        this.store = store;
+    }
+
+    public MemoryCacheStore getStore() {
+        return store;
+    }
+
+    /**
+     * 设置二进制编解码, 以{@link MemoryCacheStore}读写byte[], 为null时恢复以字符串读写
+     */
+    public void setCacheCodec(CacheCodec cacheCodec) {
+        setCacheCodec(cacheCodec, cacheCodec == null ? null : store);
+    }
+
+    @Override
+    protected String get(String key) {
+        Object value = store.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    protected void setex(String key, long seconds, String value) {
+        store.put(key, value, TimeUnit.SECONDS.toMillis(seconds));
+    }
+
+    @Override
+    protected void del(String key) {
+        store.remove(key);
+    }
+
+    @Override
+    protected long incr(String key) {
+        return store.incr(key);
+    }
+
+    @Override
+    protected <T> T parseObject(String json, Class<T> target) {
+        return Jackson.parseObject(json, target);
+    }
+
+    @Override
+    protected String toJSONString(Object object) {
+        return Jackson.toJSONString(object);
+    }
+}
@@ -0,0 +1,322 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内带过期时间的缓存存储, 用于{@link MemoryCacheAdvice}.
+ *
+ * 1. 读取时发现过期立即删除, 另由后台线程按时间轮删除到期但未被读取的元素, 每个刻度只处理到期槽位中的元素
+ *
+ * 2. 按key和值的估算字节数限制内存, 超出时按写入顺序淘汰最早写入的元素
+ *
+ * 值为String或byte[], 与Redis一样不复制byte[], 调用方不应修改写入或读出的数组.
+ * 实现了{@link BinaryCacheStore}, 可作为{@link RedisCacheAdvice#setCacheCodec(CacheCodec, BinaryCacheStore)}的存储.
+ */
+public class MemoryCacheStore implements BinaryCacheStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryCacheStore.class);
+
+    // 时间轮槽位数, 须为2的幂
+    private static final int WHEEL_SIZE = 512;
+
+    // 单个元素除key和值外的估算字节数
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+
+    private final long maxWeight;
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final long tickMillis;
+
+    private final ConcurrentLinkedQueue<Entry>[] wheel = newWheel();
+
+    // 按写入顺序排列的元素, 包含已被覆盖或删除的旧元素, 淘汰及整理时跳过
+    private final ConcurrentLinkedQueue<Entry> writeOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger writeOrderSize = new AtomicInteger();
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final Thread sweeper;
+
+    private volatile boolean running = true;
+
+    private final LongAdder expired = new LongAdder();
+
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param maxWeight  最大估算字节数, 按key和值的长度估算, 不是实际占用的堆内存
+     * @param tickMillis 时间轮刻度, 单位:毫秒, 到期元素最多在该时间后被后台删除
+     */
+    public MemoryCacheStore(long maxWeight, long tickMillis) {
+        Validate.isTrue(maxWeight > 0, "maxWeight must > 0");
+        Validate.isTrue(tickMillis > 0, "tickMillis must > 0");
+        this.maxWeight = maxWeight;
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.sweeper = new Thread(this::sweep, "cache-memory-sweeper");
+        this.sweeper.setDaemon(true);
+        this.sweeper.start();
+    }
+
+    /**
+     * 以1秒为时间轮刻度
+     */
+    public MemoryCacheStore(long maxWeight) {
+        this(maxWeight, 1000);
+    }
+
+    /**
+     * 读取未过期的值, 不存在或已过期返回null
+     */
+    public Object get(String key) {
+        Entry entry = liveEntry(key, System.currentTimeMillis());
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 写入值
+     * @param ttlMillis 存活毫秒数, 小于等于0为不过期
+     */
+    public void put(String key, Object value, long ttlMillis) {
+        Validate.notNull(value, "value is null");
+        Entry entry = new Entry(key, value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0);
+        Entry old = map.put(key, entry);
+        added(entry, old);
+    }
+
+    /**
+     * 读取byte[]格式的值, 与Redis一致, String值(如{@link #incr(String)}的计数)返回其UTF-8字节
+     */
+    @Override
+    public byte[] getBytes(String key) {
+        Object value = get(key);
+        return value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+    }
+
+    @Override
+    public void setex(String key, long seconds, byte[] value) {
+        put(key, value, TimeUnit.SECONDS.toMillis(seconds));
+    }
+
+    /**
+     * 删除值
+     * @return 删除前是否存在未过期的值
+     */
+    public boolean remove(String key) {
+        Entry entry = map.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        weight.addAndGet(-entry.weight);
+        return !entry.isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * 原子递增并返回新值, 不存在时从0开始, 保留原过期时间
+     * @throws NumberFormatException 原值不是整数
+     */
+    public long incr(String key) {
+        for (; ; ) {
+            Entry old = liveEntry(key, System.currentTimeMillis());
+            long value = old == null ? 1 : Long.parseLong(String.valueOf(old.value)) + 1;
+            Entry entry = new Entry(key, Long.toString(value), old == null ? 0 : old.expireAt);
+            if (old == null ? map.putIfAbsent(key, entry) == null : map.replace(key, old, entry)) {
+                added(entry, old);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 删除全部值
+     */
+    public void clear() {
+        for (String key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 元素个数, 包含已过期但尚未删除的元素
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 当前估算字节数
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    /**
+     * 因过期被删除的元素个数
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * 因超出内存限制被淘汰的元素个数
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * 停止后台删除线程
+     */
+    public void close() {
+        running = false;
+        sweeper.interrupt();
+    }
+
+    private Entry liveEntry(String key, long now) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(now)) {
+            if (map.remove(key, entry)) {
+                weight.addAndGet(-entry.weight);
+                expired.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    // 新元素已写入map, old为被替换的元素
+    private void added(Entry entry, Entry old) {
+        weight.addAndGet(old == null ? entry.weight : entry.weight - old.weight);
+        if (entry.expireAt > 0) {
+            wheel[(int) (entry.expireAt / tickMillis) & (WHEEL_SIZE - 1)].offer(entry);
+        }
+        writeOrder.offer(entry);
+        if (writeOrderSize.incrementAndGet() > (map.size() << 1) + 1024 && compacting.compareAndSet(false, true)) {
+            compactWriteOrder();
+        }
+        if (weight.get() > maxWeight) {
+            evict();
+        }
+    }
+
+    // 按写入顺序淘汰, 直到不超过内存限制
+    private void evict() {
+        while (weight.get() > maxWeight) {
+            Entry entry = writeOrder.poll();
+            if (entry == null) {
+                return;
+            }
+            writeOrderSize.decrementAndGet();
+            if (map.remove(entry.key, entry)) {
+                weight.addAndGet(-entry.weight);
+                evicted.increment();
+            }
+        }
+    }
+
+    // 去掉写入顺序中已被覆盖或删除的旧元素, 避免频繁覆盖同一key时无限增长
+    private void compactWriteOrder() {
+        try {
+            int removed = 0;
+            for (Iterator<Entry> it = writeOrder.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (map.get(entry.key) != entry) {
+                    it.remove();
+                    removed++;
+                }
+            }
+            writeOrderSize.addAndGet(-removed);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private void sweep() {
+        long lastTick = System.currentTimeMillis() / tickMillis;
+        List<Entry> pending = new ArrayList<>();
+        while (running) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                // close()时中断, 由running控制退出
+                continue;
+            }
+            try {
+                long now = System.currentTimeMillis();
+                long tick = now / tickMillis;
+                // 停顿超过一圈时只需处理一圈
+                for (long t = Math.max(lastTick, tick - WHEEL_SIZE) + 1; t <= tick; t++) {
+                    sweepSlot(wheel[(int) t & (WHEEL_SIZE - 1)], now, pending);
+                }
+                lastTick = tick;
+            } catch (Throwable t) {
+                log.warn("删除过期缓存出错", t);
+            }
+        }
+    }
+
+    // 删除槽位中已到期的元素, 未到期的为后续轮次的元素, 放回槽位
+    private void sweepSlot(ConcurrentLinkedQueue<Entry> slot, long now, List<Entry> pending) {
+        Entry entry;
+        while ((entry = slot.poll()) != null) {
+            if (entry.isExpired(now)) {
+                if (map.remove(entry.key, entry)) {
+                    weight.addAndGet(-entry.weight);
+                    expired.increment();
+                }
+            } else if (map.get(entry.key) == entry) {
+                pending.add(entry);
+            }
+        }
+        slot.addAll(pending);
+        pending.clear();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentLinkedQueue<Entry>[] newWheel() {
+        return new ConcurrentLinkedQueue[WHEEL_SIZE];
+    }
+
+    private static final class Entry {
+        final String key;
+        final Object value;
+        // 过期时间, 毫秒时间戳, 0为不过期
+        final long expireAt;
+        final int weight;
+
+        Entry(String key, Object value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+            int valueLength = value instanceof byte[] ? ((byte[]) value).length : ((String) value).length() << 1;
+            this.weight = ENTRY_OVERHEAD + (key.length() << 1) + valueLength;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt > 0 && expireAt <= now;
+        }
+    }
+}
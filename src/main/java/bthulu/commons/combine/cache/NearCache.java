@@ -0,0 +1,227 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内的近端缓存(L1), 存放已反序列化的对象, 在{@link RedisCacheAdvice}中先于远端缓存查询.
+ *
+ * 1. 容量有界, 按W-TinyLFU淘汰: 新元素先进入占容量1%的窗口LRU, 被挤出窗口时与主LRU的队尾元素比较{@link FrequencySketch}估算的访问频率,
+ * 频率更高者留在主LRU中. 既能抵御一次性扫描的冲刷, 又能让新出现的热点进入缓存
+ *
+ * 2. 每个元素有各自的过期时间, 读取时惰性删除
+ *
+ * 3. 读操作无锁, 仅在能立刻获得锁时才记录访问频率和LRU顺序, 竞争激烈时丢弃部分访问记录
+ *
+ * 命中时返回的是同一个对象实例, 调用方不应修改缓存的对象.
+ */
+public class NearCache {
+
+    private final ConcurrentHashMap<String, Node> data;
+
+    private final FrequencySketch sketch;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final int windowMaximum;
+
+    private final int mainMaximum;
+
+    // 双向链表的哨兵, head.next为最久未访问的元素
+    private final Node window = Node.sentinel();
+
+    private final Node main = Node.sentinel();
+
+    private int windowSize;
+
+    private int mainSize;
+
+    /**
+     * @param maximumSize 最大元素个数
+     */
+    public NearCache(int maximumSize) {
+        Validate.isTrue(maximumSize > 0, "maximumSize must > 0");
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.mainMaximum = Math.max(1, maximumSize - windowMaximum);
+        this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * 获取缓存对象, 不存在或已过期返回null
+     */
+    public Object get(String key) {
+        Node node = data.get(key);
+        if (node != null && node.expireAt <= System.currentTimeMillis()) {
+            remove(key, node);
+            node = null;
+        }
+        if (evictionLock.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (node != null && node.prev != null) {
+                    moveToTail(node, node.inMain ? main : window);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 写入缓存对象, null值不缓存
+     * @param ttlMillis 存活时间, 单位:毫秒
+     */
+    public void put(String key, Object value, long ttlMillis) {
+        if (value == null || ttlMillis <= 0) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        evictionLock.lock();
+        try {
+            Node node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                node.expireAt = expireAt;
+                moveToTail(node, node.inMain ? main : window);
+                return;
+            }
+            node = new Node(key, value, expireAt);
+            data.put(key, node);
+            linkLast(node, window);
+            windowSize++;
+            if (windowSize > windowMaximum) {
+                Node candidate = window.next;
+                unlink(candidate);
+                windowSize--;
+                admit(candidate);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 删除缓存对象
+     */
+    public void invalidate(String key) {
+        evictionLock.lock();
+        try {
+            Node node = data.remove(key);
+            if (node != null) {
+                detach(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            window.prev = window.next = window;
+            main.prev = main.next = main;
+            windowSize = mainSize = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前元素个数, 含已过期未清理的元素
+     */
+    public int size() {
+        return data.size();
+    }
+
+    private void remove(String key, Node node) {
+        evictionLock.lock();
+        try {
+            if (data.remove(key, node)) {
+                detach(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // 窗口LRU挤出的元素与主LRU队尾比较频率, 胜者进入主LRU
+    private void admit(Node candidate) {
+        if (mainSize < mainMaximum) {
+            candidate.inMain = true;
+            linkLast(candidate, main);
+            mainSize++;
+            return;
+        }
+        Node victim = main.next;
+        if (victim.expireAt > System.currentTimeMillis()
+                && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            data.remove(candidate.key, candidate);
+            return;
+        }
+        unlink(victim);
+        data.remove(victim.key, victim);
+        candidate.inMain = true;
+        linkLast(candidate, main);
+    }
+
+    private void detach(Node node) {
+        if (node.prev == null) {
+            return;
+        }
+        unlink(node);
+        if (node.inMain) {
+            mainSize--;
+        } else {
+            windowSize--;
+        }
+    }
+
+    private static void moveToTail(Node node, Node head) {
+        unlink(node);
+        linkLast(node, head);
+    }
+
+    private static void linkLast(Node node, Node head) {
+        Node last = head.prev;
+        node.prev = last;
+        node.next = head;
+        last.next = node;
+        head.prev = node;
+    }
+
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+    }
+
+    private static final class Node {
+        final String key;
+        volatile Object value;
+        volatile long expireAt;
+        // 以下字段仅在evictionLock内访问
+        Node prev;
+        Node next;
+        boolean inMain;
+
+        Node(String key, Object value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        static Node sentinel() {
+            Node node = new Node(null, null, Long.MAX_VALUE);
+            node.prev = node.next = node;
+            return node;
+        }
+    }
+}
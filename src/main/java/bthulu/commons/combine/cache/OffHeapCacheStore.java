@@ -0,0 +1,620 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.RuntimeUtil;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外的序列化缓存存储, 值保存在固定大小的直接内存段中, 不占用堆内存, 用于{@link RedisCacheAdvice#setOffHeapStore}.
+ *
+ * 1. 每个段为一个直接内存ByteBuffer, 按需分配, 段数为容量除以段大小. 写入时追加到当前段末尾,
+ * 记录格式为4字节key长度+4字节值长度+UTF-8 key+值, 堆上只保留key到段内位置的索引
+ *
+ * 2. 覆盖, 删除及过期的记录成为空洞. 当前段写满且没有空闲段时, 选取存活比例最低的段,
+ * 存活比例低于一半且整理后放得下新记录时将其存活记录在段内向前移动整理, 整理后的段作为新的当前段继续写入; 否则淘汰最早写入的整个段
+ *
+ * 3. 读取时加读锁并复制出值, 写入, 删除及整理加写锁
+ *
+ * 4. 开启快照后, JVM关闭时将未过期的值写入内存映射文件, 下次启动时映射该文件并只读取key,
+ * 值在首次读取时才复制到直接内存段, 过期时间按写入时的绝对时间计算
+ *
+ * position, limit均转为{@link Buffer}调用, 以JDK 9及以上编译时不会链接到Java 8中不存在的协变返回的方法
+ */
+public class OffHeapCacheStore {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapCacheStore.class);
+
+    private static final int RECORD_HEADER = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x4F484353;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // 快照文件头: magic, 格式版本, 记录数
+    private static final int SNAPSHOT_HEADER = 12;
+
+    // 快照记录头: key长度, 值长度, 过期时间
+    private static final int SNAPSHOT_RECORD_HEADER = 16;
+
+    // 存活比例低于该值时整理段, 否则淘汰最早的段
+    private static final double COMPACT_RATIO = 0.5;
+
+    private final int segmentBytes;
+
+    private final ByteBuffer[] segments;
+
+    // 各段已写入的字节数
+    private final int[] writePos;
+
+    // 各段存活记录的字节数
+    private final int[] liveBytes;
+
+    // 各段的写入顺序, 0为空闲
+    private final long[] sequence;
+
+    private final Map<String, Location> index = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 当前写入的段, 由写锁保护
+    private int head = -1;
+
+    private long nextSequence;
+
+    // 启动时映射的快照文件, 全部载入或删除后为null, 由读写锁保护
+    private ByteBuffer snapshot;
+
+    // 快照中尚未载入的key及其记录的位置
+    private Map<String, Integer> snapshotIndex;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder compactions = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder warmed = new LongAdder();
+
+    /**
+     * @param capacityBytes 最大直接内存字节数
+     * @param segmentBytes  段大小, 大于段大小的记录不保存
+     */
+    public OffHeapCacheStore(long capacityBytes, int segmentBytes) {
+        Validate.isTrue(segmentBytes > RECORD_HEADER, "segmentBytes too small");
+        long count = capacityBytes / segmentBytes;
+        Validate.isTrue(count >= 2 && count <= Integer.MAX_VALUE, "capacityBytes must between 2 and 2^31 segments");
+        this.segmentBytes = segmentBytes;
+        this.segments = new ByteBuffer[(int) count];
+        this.writePos = new int[(int) count];
+        this.liveBytes = new int[(int) count];
+        this.sequence = new long[(int) count];
+    }
+
+    /**
+     * 读取未过期的值, 不存在或已过期返回null
+     */
+    public byte[] get(String key) {
+        boolean inSnapshot;
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Location location = index.get(key);
+            if (location != null && !location.isExpired(System.currentTimeMillis())) {
+                ByteBuffer buffer = segments[location.segment].duplicate();
+                ((Buffer) buffer).position(location.offset + RECORD_HEADER + location.keyLength);
+                byte[] value = new byte[location.valueLength];
+                buffer.get(value);
+                hits.increment();
+                return value;
+            }
+            inSnapshot = location == null && snapshotIndex != null && snapshotIndex.containsKey(key);
+        } finally {
+            readLock.unlock();
+        }
+        byte[] value = inSnapshot ? loadFromSnapshot(key) : null;
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 写入值
+     * @param ttlMillis 存活毫秒数, 小于等于0为不过期
+     * @return 记录大于段大小时不保存并返回false
+     */
+    public boolean put(String key, byte[] value, long ttlMillis) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER + keyBytes.length + value.length;
+        if (recordLength > segmentBytes) {
+            rejected.increment();
+            remove(key);
+            return false;
+        }
+        long expireAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            removeFromSnapshot(key);
+            append(key, keyBytes, value, expireAt);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 追加记录并更新索引, 须持有写锁
+    private void append(String key, byte[] keyBytes, byte[] value, long expireAt) {
+        int recordLength = RECORD_HEADER + keyBytes.length + value.length;
+        release(index.remove(key));
+        // 整理后的段仍可能放不下, 此时继续切换, 最终淘汰出空段
+        while (head < 0 || writePos[head] + recordLength > segmentBytes) {
+            advanceHead(recordLength);
+        }
+        int offset = writePos[head];
+        ByteBuffer buffer = segments[head];
+        ((Buffer) buffer).position(offset);
+        buffer.putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+        writePos[head] = offset + recordLength;
+        liveBytes[head] += recordLength;
+        index.put(key, new Location(head, offset, keyBytes.length, value.length, expireAt));
+    }
+
+    /**
+     * 删除值
+     * @return 删除前是否存在
+     */
+    public boolean remove(String key) {
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            Location location = index.remove(key);
+            release(location);
+            return removeFromSnapshot(key) || location != null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 删除全部值, 保留已分配的直接内存供后续写入
+     */
+    public void clear() {
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            index.clear();
+            snapshot = null;
+            snapshotIndex = null;
+            for (int i = 0; i < segments.length; i++) {
+                writePos[i] = 0;
+                liveBytes[i] = 0;
+                sequence[i] = 0;
+            }
+            head = -1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 元素个数, 包含已过期但尚未清理的元素
+     */
+    public int size() {
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return index.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 已分配的直接内存字节数
+     */
+    public long getAllocatedBytes() {
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            long allocated = 0;
+            for (ByteBuffer segment : segments) {
+                if (segment != null) {
+                    allocated += segmentBytes;
+                }
+            }
+            return allocated;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 存活记录的字节数, 含key及记录头
+     */
+    public long getLiveBytes() {
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            long live = 0;
+            for (int bytes : liveBytes) {
+                live += bytes;
+            }
+            return live;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 因空间不足被淘汰的元素个数
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 段内整理的次数
+     */
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    /**
+     * 因大于段大小未保存的次数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 快照中首次读取时载入的元素个数
+     */
+    public long getWarmedCount() {
+        return warmed.sum();
+    }
+
+    /**
+     * 开启快照: 文件存在时映射该文件, 其中未过期的值在首次读取时载入; JVM关闭时将未过期的值写入该文件.
+     * 快照只保存字节内容, 值的兼容性由使用方校验, 见{@link RedisCacheAdvice#setOffHeapStore(OffHeapCacheStore)}
+     */
+    public void enableSnapshot(File file) {
+        Validate.notNull(file, "file is null");
+        if (file.isFile()) {
+            openSnapshot(file);
+        }
+        RuntimeUtil.addShutdownHook(() -> {
+            try {
+                writeSnapshot(file);
+            } catch (Throwable t) {
+                log.warn("写入堆外缓存快照{}出错", file, t);
+            }
+        }, "cache-off-heap-snapshot");
+    }
+
+    /**
+     * 将未过期的值(含快照中尚未载入的值)写入内存映射文件, 先写入临时文件再替换, 超过2GB的部分不写入
+     */
+    public void writeSnapshot(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            long size = SNAPSHOT_HEADER;
+            for (Location location : index.values()) {
+                if (!location.isExpired(now)) {
+                    size += SNAPSHOT_RECORD_HEADER + location.keyLength + location.valueLength;
+                }
+            }
+            if (snapshotIndex != null) {
+                for (int offset : snapshotIndex.values()) {
+                    size += snapshotRecordLength(snapshot, offset);
+                }
+            }
+            size = Math.min(size, Integer.MAX_VALUE);
+            int count = 0;
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                ((Buffer) out).position(SNAPSHOT_HEADER);
+                for (Location location : index.values()) {
+                    if (location.isExpired(now)
+                            || out.remaining() < SNAPSHOT_RECORD_HEADER + location.keyLength + location.valueLength) {
+                        continue;
+                    }
+                    ByteBuffer record = segments[location.segment].duplicate();
+                    ((Buffer) record).position(location.offset + RECORD_HEADER);
+                    ((Buffer) record).limit(location.offset + location.recordLength());
+                    out.putInt(location.keyLength).putInt(location.valueLength).putLong(location.expireAt).put(record);
+                    count++;
+                }
+                if (snapshotIndex != null) {
+                    for (int offset : snapshotIndex.values()) {
+                        int length = snapshotRecordLength(snapshot, offset);
+                        if (out.remaining() >= length && !isSnapshotExpired(snapshot, offset, now)) {
+                            ByteBuffer record = snapshot.duplicate();
+                            ((Buffer) record).position(offset);
+                            ((Buffer) record).limit(offset + length);
+                            out.put(record);
+                            count++;
+                        }
+                    }
+                }
+                out.putInt(0, SNAPSHOT_MAGIC).putInt(4, SNAPSHOT_VERSION).putInt(8, count);
+                out.force();
+                if (out.position() < size) {
+                    channel.truncate(out.position());
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("写入堆外缓存快照{}, 共{}个", file, count);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // 映射快照文件并读取其中未过期的key, 文件格式不符或已损坏时忽略整个文件
+    private void openSnapshot(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER || size > Integer.MAX_VALUE) {
+                return;
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                log.warn("堆外缓存快照{}格式不符, 忽略", file);
+                return;
+            }
+            int count = in.getInt();
+            long now = System.currentTimeMillis();
+            Map<String, Integer> keys = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int offset = in.position();
+                int keyLength = in.getInt();
+                int valueLength = in.getInt();
+                long expireAt = in.getLong();
+                byte[] key = new byte[keyLength];
+                in.get(key);
+                ((Buffer) in).position(in.position() + valueLength);
+                if (expireAt <= 0 || expireAt > now) {
+                    keys.put(new String(key, StandardCharsets.UTF_8), offset);
+                }
+            }
+            ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+            writeLock.lock();
+            try {
+                snapshot = keys.isEmpty() ? null : in;
+                snapshotIndex = keys.isEmpty() ? null : keys;
+            } finally {
+                writeLock.unlock();
+            }
+            log.info("映射堆外缓存快照{}, 未过期{}个", file, keys.size());
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            log.warn("读取堆外缓存快照{}出错, 忽略", file, e);
+        }
+    }
+
+    // 将快照中的值复制到直接内存段, 已过期或已被覆盖, 删除时返回null
+    private byte[] loadFromSnapshot(String key) {
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (snapshotIndex == null || index.containsKey(key)) {
+                return null;
+            }
+            Integer offset = snapshotIndex.get(key);
+            if (offset == null) {
+                return null;
+            }
+            ByteBuffer record = snapshot.duplicate();
+            ((Buffer) record).position(offset);
+            int keyLength = record.getInt();
+            int valueLength = record.getInt();
+            long expireAt = record.getLong();
+            byte[] keyBytes = new byte[keyLength];
+            byte[] value = new byte[valueLength];
+            record.get(keyBytes).get(value);
+            removeFromSnapshot(key);
+            if (expireAt > 0 && expireAt <= System.currentTimeMillis()) {
+                return null;
+            }
+            if (RECORD_HEADER + keyLength + valueLength <= segmentBytes) {
+                append(key, keyBytes, value, expireAt);
+            }
+            warmed.increment();
+            return value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 从快照中删除key, 全部删除后释放映射, 须持有写锁
+    private boolean removeFromSnapshot(String key) {
+        if (snapshotIndex == null || snapshotIndex.remove(key) == null) {
+            return false;
+        }
+        if (snapshotIndex.isEmpty()) {
+            snapshot = null;
+            snapshotIndex = null;
+        }
+        return true;
+    }
+
+    private static int snapshotRecordLength(ByteBuffer buffer, int offset) {
+        return SNAPSHOT_RECORD_HEADER + buffer.getInt(offset) + buffer.getInt(offset + 4);
+    }
+
+    private static boolean isSnapshotExpired(ByteBuffer buffer, int offset, long now) {
+        long expireAt = buffer.getLong(offset + 8);
+        return expireAt > 0 && expireAt <= now;
+    }
+
+    private void release(Location location) {
+        if (location != null) {
+            liveBytes[location.segment] -= location.recordLength();
+        }
+    }
+
+    // 切换到新的写入段: 优先使用空闲段, 其次整理存活比例最低且整理后放得下recordLength的段, 最后淘汰最早写入的段
+    private void advanceHead(int recordLength) {
+        long now = System.currentTimeMillis();
+        int next = -1;
+        int sparsest = -1;
+        int oldest = -1;
+        for (int i = 0; i < segments.length; i++) {
+            if (sequence[i] == 0) {
+                next = i;
+                break;
+            }
+            if (i == head) {
+                continue;
+            }
+            if (sparsest < 0 || (long) liveBytes[i] * writePos[sparsest] < (long) liveBytes[sparsest] * writePos[i]) {
+                sparsest = i;
+            }
+            if (oldest < 0 || sequence[i] < sequence[oldest]) {
+                oldest = i;
+            }
+        }
+        if (next >= 0) {
+            if (segments[next] == null) {
+                segments[next] = ByteBuffer.allocateDirect(segmentBytes);
+            }
+            writePos[next] = 0;
+            liveBytes[next] = 0;
+        } else if (liveBytes[sparsest] < writePos[sparsest] * COMPACT_RATIO
+                && segmentBytes - liveBytes[sparsest] >= recordLength) {
+            next = sparsest;
+            compact(next, now);
+        } else {
+            next = oldest;
+            evict(next, now);
+        }
+        head = next;
+        sequence[next] = ++nextSequence;
+    }
+
+    // 将段内存活的记录依次向前移动, 删除空洞及过期的记录
+    private void compact(int segment, long now) {
+        ByteBuffer buffer = segments[segment];
+        int end = writePos[segment];
+        int offset = 0;
+        int target = 0;
+        while (offset < end) {
+            int recordLength = recordLength(buffer, offset);
+            String key = readKey(buffer, offset);
+            Location location = index.get(key);
+            if (location != null && location.segment == segment && location.offset == offset) {
+                if (location.isExpired(now)) {
+                    index.remove(key);
+                } else {
+                    if (target != offset) {
+                        byte[] record = new byte[recordLength];
+                        ((Buffer) buffer).position(offset);
+                        buffer.get(record);
+                        ((Buffer) buffer).position(target);
+                        buffer.put(record);
+                        index.put(key, new Location(segment, target, location.keyLength, location.valueLength,
+                                location.expireAt));
+                    }
+                    target += recordLength;
+                }
+            }
+            offset += recordLength;
+        }
+        writePos[segment] = target;
+        liveBytes[segment] = target;
+        compactions.increment();
+    }
+
+    // 淘汰整个段
+    private void evict(int segment, long now) {
+        ByteBuffer buffer = segments[segment];
+        int end = writePos[segment];
+        int offset = 0;
+        while (offset < end) {
+            String key = readKey(buffer, offset);
+            Location location = index.get(key);
+            if (location != null && location.segment == segment && location.offset == offset) {
+                index.remove(key);
+                if (!location.isExpired(now)) {
+                    evictions.increment();
+                }
+            }
+            offset += recordLength(buffer, offset);
+        }
+        writePos[segment] = 0;
+        liveBytes[segment] = 0;
+    }
+
+    private static int recordLength(ByteBuffer buffer, int offset) {
+        return RECORD_HEADER + buffer.getInt(offset) + buffer.getInt(offset + 4);
+    }
+
+    private static String readKey(ByteBuffer buffer, int offset) {
+        byte[] key = new byte[buffer.getInt(offset)];
+        ByteBuffer duplicate = buffer.duplicate();
+        ((Buffer) duplicate).position(offset + RECORD_HEADER);
+        duplicate.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static final class Location {
+        final int segment;
+        final int offset;
+        final int keyLength;
+        final int valueLength;
+        // 过期时间, 毫秒时间戳, 0为不过期
+        final long expireAt;
+
+        Location(int segment, int offset, int keyLength, int valueLength, long expireAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.expireAt = expireAt;
+        }
+
+        int recordLength() {
+            return RECORD_HEADER + keyLength + valueLength;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt > 0 && expireAt <= now;
+        }
+    }
+}
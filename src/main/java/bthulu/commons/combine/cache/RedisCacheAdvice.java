@@ -1,6 +1,9 @@
 package bthulu.commons.combine.cache;
 
-import bthulu.commons.combine.Pair;
+import bthulu.commons.combine.RuntimeUtil;
+import bthulu.commons.combine.concurrent.CircuitBreaker;
+import bthulu.commons.combine.concurrent.IoExecutors;
+import org.apache.commons.lang3.Validate;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -9,17 +12,29 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @Aspect
 public abstract class RedisCacheAdvice {
     private static final Logger log = LoggerFactory.getLogger(RedisCacheAdvice.class);
     private static final long maxTimeout = 3600 * 24 * 7;
-    // 使用SPEL进行key的解析
-    private ExpressionParser parser = new SpelExpressionParser();
+    private static final String GENERATION_SUFFIX = ":gen";
+    // 堆外缓存值的头部: 类型标记及类型指纹
+    private static final int OFF_HEAP_HEADER = 5;
+    // 使用SPEL进行key的解析, 多次解释执行后编译为字节码
+    private ExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, RedisCacheAdvice.class.getClassLoader()));
 
     @Pointcut("@annotation(bthulu.commons.combine.cache.Cacheable)")
     public void cacheCut() {
@@ -29,60 +44,943 @@ public abstract class RedisCacheAdvice {
     public void cacheEvictCut() {
     }
 
+    @Pointcut("@annotation(bthulu.commons.combine.cache.BatchCacheable)")
+    public void batchCacheCut() {
+    }
+
     private final String cacheKeyPrefix;
 
+    // 近端缓存, 为null时不启用
+    private volatile NearCache nearCache;
+
+    // 堆外缓存, 为null时不启用
+    private volatile OffHeapCacheStore offHeapStore;
+
+    // 热点key统计, 为null时不统计
+    private volatile HotKeyDetector hotKeyDetector;
+
+    // 热点key的本地副本, 为null时不复制
+    private volatile NearCache hotKeyReplica;
+
+    // 热点key本地副本的存活毫秒数
+    private volatile long hotKeyTtlMillis;
+
+    // 读取缓存的最长等待时间, 单位:毫秒, 小于等于0为不限制
+    private volatile long readDeadlineMillis;
+
+    // 限时读取缓存时执行读取的线程池, 为null时使用getAsync
+    private volatile Executor readExecutor;
+
+    // 缓存读写的熔断器, 为null时不熔断
+    private volatile CircuitBreaker circuitBreaker;
+
+    // 近端缓存中代表null的值
+    private static final Object NULL_VALUE = new Object();
+
+    // 缓存未命中
+    private static final Object MISS = new Object();
+
+    // 读取缓存超时
+    private static final Object TIMEOUT = new Object();
+
+    // 缓存名及其对应的布隆过滤器
+    private final ConcurrentHashMap<String, BloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    // 正在执行中的缓存未命中请求, 用于合并并发请求
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    // 异步批量写缓存队列, 为null时在业务线程同步写缓存
+    private volatile WriteBehindQueue<Object> writeBehindQueue;
+
+    // 近端缓存失效消息的批量发布, 为null时不通知其他节点
+    private volatile InvalidationBatcher invalidationBatcher;
+
+    // 二进制编解码及其存储, 为null时以字符串读写缓存
+    private volatile Binary binary;
+
+    // 正在后台刷新的缓存key
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // 后台刷新缓存的线程池, 为null时首次使用时创建
+    private volatile Executor refreshExecutor;
+
+    // 异步方法读取缓存完成后解码及执行方法的线程池, 为null时首次使用时创建
+    private volatile Executor asyncExecutor;
+
+    // 缓存名及其对应的统计
+    private final ConcurrentHashMap<String, CacheStats> cacheStats = new ConcurrentHashMap<>();
+
+    // 命名空间版本号的本地缓存时间, 单位:毫秒, 小于0为未开启
+    private volatile long generationRefreshMillis = -1;
+
+    // 缓存名及其对应的命名空间版本号
+    private final ConcurrentHashMap<String, Generation> generations = new ConcurrentHashMap<>();
+
+    // 每个方法预先解析的缓存元数据
+    private final ConcurrentHashMap<Method, CacheOperation> cacheOperations = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Method, CacheOperation> evictOperations = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Method, BatchCacheOperation> batchOperations = new ConcurrentHashMap<>();
+
     public RedisCacheAdvice(String cacheKeyPrefix) {
         this.cacheKeyPrefix = cacheKeyPrefix + ":ca:";
     }
 
+    /**
+     * 设置进程内的近端缓存, 仅对{@link Cacheable#localTimeout()}大于0的方法生效
+     */
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 设置堆外缓存, 保存序列化后的缓存值, 位于近端缓存与远程缓存之间, 仅对{@link Cacheable#offHeapTimeout()}大于0的方法生效.
+     * 远程缓存命中或写入时同时写入堆外缓存, {@link CacheEvict}及失效通道中同时删除.
+     * 可通过{@link OffHeapCacheStore#enableSnapshot(java.io.File)}在重启后复用, 缓存值类型的字段变化后旧值按未命中处理
+     */
+    public void setOffHeapStore(OffHeapCacheStore offHeapStore) {
+        this.offHeapStore = offHeapStore;
+    }
+
+    /**
+     * 设置二进制编解码, 设置后通过binaryStore以byte[]读写缓存, 不再使用{@link #parseObject(String, Class)}和{@link #toJSONString(Object)}.
+     * 与字符串格式的缓存互不兼容, 切换时须使用新的缓存前缀. 两者均为null时恢复以字符串读写.
+     * @param binaryStore 读写byte[]的存储, 通常为同时实现了{@link BinaryCacheStore}的子类自身
+     */
+    public void setCacheCodec(CacheCodec cacheCodec, BinaryCacheStore binaryStore) {
+        Validate.isTrue((cacheCodec == null) == (binaryStore == null), "cacheCodec and binaryStore must both be set or null");
+        this.binary = cacheCodec == null ? null : new Binary(cacheCodec, binaryStore);
+    }
+
+    /**
+     * 设置缓存的布隆过滤器, 缓存key去掉缓存名的部分(如<code>key = "#id"</code>时为id)不在过滤器中时, 直接返回null(Optional为空),
+     * 不再查询缓存和执行方法. 对{@link BatchCacheable}同样生效, 不在过滤器中的id不出现在结果中.
+     * 过滤器须预先加入全部已存在的数据, 并在新增数据时同步加入, 仅对指定了缓存名的方法生效.
+     */
+    public void setBloomFilter(String cacheName, BloomFilter bloomFilter) {
+        if (bloomFilter == null) {
+            bloomFilters.remove(cacheName);
+        } else {
+            bloomFilters.put(cacheName, bloomFilter);
+        }
+    }
+
+    public BloomFilter getBloomFilter(String cacheName) {
+        return bloomFilters.get(cacheName);
+    }
+
+    /**
+     * 各缓存名的统计快照, 按缓存名排序, 未指定缓存名的以声明类名:方法名统计
+     */
+    public Map<String, CacheStats.Snapshot> getCacheStats() {
+        Map<String, CacheStats.Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, CacheStats> entry : cacheStats.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 开启命名空间版本, 指定了缓存名的缓存key中加入该缓存名的版本号, 即<code>value:v版本号:key</code>.
+     * {@link CacheEvict#allEntries()}时仅递增版本号, 旧版本的缓存不再被读取, 等待其自然过期.
+     * 版本号保存在<code>value:gen</code>中, 通过{@link #incr(String)}递增. 开启前后的缓存key不同, 相当于清空一次缓存.
+     * @param refreshMillis 版本号的本地缓存时间, 单位:毫秒. 其他节点删除全部缓存后, 本节点最多在该时间后读到新版本
+     */
+    public void enableNamespaceVersion(long refreshMillis) {
+        Validate.isTrue(refreshMillis >= 0, "refreshMillis must >= 0");
+        this.generationRefreshMillis = refreshMillis;
+    }
+
+    /**
+     * 设置后台刷新缓存的线程池, 用于{@link Cacheable#refresh()}. 默认为核数(至少2)个守护线程, 空闲60秒后回收, 队列长度1024, 队列满时放弃刷新.
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * 设置异步方法的线程池, 异步读取缓存未在调用线程中完成时, 在其中解码缓存值及执行方法, 不占用缓存客户端的IO线程.
+     * 默认为{@link IoExecutors#newIoExecutor(String)}, 线程池拒绝时在读取完成的线程中执行.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * 开启异步批量写缓存, 缓存未命中时业务线程仅将结果放入队列, 由后台线程通过{@link #msetex(Map, long)}批量写入.
+     * JVM关闭时写完队列中剩余的元素.
+     * @param capacity           队列容量
+     * @param batchSize          单次批量写入的最大元素个数
+     * @param offerTimeoutMillis 队列满时的最长等待时间, 单位:毫秒, 超时后丢弃本次写入
+     */
+    public synchronized WriteBehindQueue<Object> enableWriteBehind(int capacity, int batchSize, long offerTimeoutMillis) {
+        if (writeBehindQueue == null) {
+            WriteBehindQueue<Object> queue = new WriteBehindQueue<>(capacity, batchSize, offerTimeoutMillis,
+                    (seconds, keyValues) -> msetexSerialized(keyValues, seconds));
+            RuntimeUtil.addShutdownHook(queue::close, "cache-write-behind");
+            writeBehindQueue = queue;
+        }
+        return writeBehindQueue;
+    }
+
+    /**
+     * 异步批量写缓存队列, 未开启时返回null
+     */
+    public WriteBehindQueue<Object> getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    /**
+     * 限制读取缓存的等待时间, 超时后不再等待读取结果, 本次调用直接执行方法且不写缓存.
+     * 仅对同步方法及{@link BatchCacheable}生效, BatchCacheable须同时设置readExecutor.
+     * @param deadlineMillis 最长等待时间, 单位:毫秒, 小于等于0为不限制
+     * @param readExecutor   执行读取的线程池, 为null时通过{@link #getAsync(String)}读取, 此时须覆盖为非阻塞实现, 否则无法超时
+     */
+    public void setReadDeadline(long deadlineMillis, Executor readExecutor) {
+        this.readExecutor = readExecutor;
+        this.readDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * 开启缓存读写的熔断器, 连续failureThreshold次读写出错或读取超时后打开, openMillis毫秒内不再读写缓存而直接执行方法,
+     * 之后放行一次探测请求, 成功则恢复. 状态转换次数见{@link CircuitBreaker}, 跳过缓存的次数见{@link CacheStats.Snapshot#getBypassCount()}
+     */
+    public synchronized CircuitBreaker enableCircuitBreaker(int failureThreshold, long openMillis) {
+        CircuitBreaker breaker = new CircuitBreaker(cacheKeyPrefix + "breaker", failureThreshold, openMillis);
+        circuitBreaker = breaker;
+        return breaker;
+    }
+
+    /**
+     * 缓存读写的熔断器, 未开启时返回null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 开启热点key统计, 按缓存名(未指定时为声明类名:方法名)统计访问最多的缓存key, 见{@link HotKeyDetector}.
+     * @param samplePercent    采样率, 0-100
+     * @param topN             每个缓存名报告的key个数
+     * @param windowMillis     统计窗口, 单位:毫秒
+     * @param hotShare         热点key的最小访问占比, 0-1
+     * @param promoteTtlMillis 大于0时将热点key的缓存值复制到本地, 存活该毫秒数(不超过缓存的timeout), 期间不再读取缓存.
+     *                         与近端缓存一样直接返回缓存的对象实例, 仅在{@link CacheEvict}及失效通道中删除
+     */
+    public synchronized HotKeyDetector enableHotKeyDetection(double samplePercent, int topN, long windowMillis,
+                                                             double hotShare, long promoteTtlMillis) {
+        HotKeyDetector detector = new HotKeyDetector(samplePercent, topN, windowMillis, hotShare);
+        hotKeyTtlMillis = promoteTtlMillis;
+        hotKeyReplica = promoteTtlMillis > 0 ? new NearCache(topN * 64) : null;
+        hotKeyDetector = detector;
+        return detector;
+    }
+
+    /**
+     * 上一个统计窗口中各缓存名访问最多的缓存key, 未开启热点key统计时返回空
+     */
+    public Map<String, List<HotKeyDetector.HotKey>> getHotKeys() {
+        HotKeyDetector detector = hotKeyDetector;
+        return detector == null ? Collections.emptyMap() : detector.getTopKeys();
+    }
+
+    /**
+     * 设置跨节点的近端缓存失效通道, {@link CacheEvict}删除缓存后将缓存key批量发布到通道, 各节点收到后删除近端缓存中的该key.
+     * {@link CacheEvict#allEntries()}时发布版本号key, 收到后立即重新读取版本号并清空近端缓存.
+     * 发布方自身同时也会收到消息. JVM关闭时发布剩余的key.
+     * @param batchMillis 最长发布间隔, 单位:毫秒
+     * @param batchSize   单条消息的最大key个数, 待发布的key超过其10倍时合并为清空全部近端缓存
+     */
+    public synchronized InvalidationBatcher setInvalidationChannel(InvalidationChannel channel, long batchMillis,
+                                                                   int batchSize) {
+        Validate.isTrue(invalidationBatcher == null, "invalidation channel already set");
+        InvalidationBatcher batcher = new InvalidationBatcher(channel, batchMillis, batchSize, batchSize * 10);
+        channel.subscribe(this::onInvalidate);
+        RuntimeUtil.addShutdownHook(batcher::close, "cache-invalidation");
+        invalidationBatcher = batcher;
+        return batcher;
+    }
+
+    /**
+     * 近端缓存失效消息的批量发布, 未设置失效通道时返回null
+     */
+    public InvalidationBatcher getInvalidationBatcher() {
+        return invalidationBatcher;
+    }
+
+    // 收到失效消息, 删除近端缓存
+    private void onInvalidate(Collection<String> keys) {
+        boolean all = false;
+        for (String key : keys) {
+            if (InvalidationChannel.ALL.equals(key)) {
+                all = true;
+            } else if (key.startsWith(cacheKeyPrefix) && key.endsWith(GENERATION_SUFFIX)) {
+                generations.remove(key.substring(cacheKeyPrefix.length(), key.length() - GENERATION_SUFFIX.length()));
+                all = true;
+            } else {
+                invalidateLocal(key);
+            }
+        }
+        if (all) {
+            invalidateAllLocal();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("近端缓存失效:" + keys);
+        }
+    }
+
+    // 删除近端缓存, 堆外缓存及热点key本地副本中的key
+    private void invalidateLocal(String key) {
+        NearCache near = nearCache;
+        if (near != null) {
+            near.invalidate(key);
+        }
+        OffHeapCacheStore store = offHeapStore;
+        if (store != null) {
+            store.remove(key);
+        }
+        NearCache replica = hotKeyReplica;
+        if (replica != null) {
+            replica.invalidate(key);
+        }
+    }
+
+    private void invalidateAllLocal() {
+        NearCache near = nearCache;
+        if (near != null) {
+            near.invalidateAll();
+        }
+        OffHeapCacheStore store = offHeapStore;
+        if (store != null) {
+            store.clear();
+        }
+        NearCache replica = hotKeyReplica;
+        if (replica != null) {
+            replica.invalidateAll();
+        }
+    }
+
+    private void publishInvalidation(String key) {
+        InvalidationBatcher batcher = invalidationBatcher;
+        if (batcher != null) {
+            batcher.offer(key);
+        }
+    }
+
     @Around("cacheCut()")
     public Object doCache(ProceedingJoinPoint joinPoint) throws Throwable {
         // 生成缓存key及timeout
+        CacheOperation operation = null;
         String key = null;
-        long timeout = 60;
+        // 散列key时保存在缓存值中的原始key, 不校验时为null
+        String originalKey = null;
+        long localTtl = 0;
+        // 熔断或读取超时, 不再读写缓存
+        boolean bypass = false;
 
         // 从缓存获取数据
         try {
             // 生成缓存key及timeout
             MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            Pair<String, Integer> pair = getCacheKeyAndTimeout(signature, joinPoint);
-            key = pair.getK();
-            timeout = pair.getV();
+            operation = getCacheOperation(signature);
+            Object[] args = joinPoint.getArgs();
+            String suffix = operation.keySuffix(args);
+            String namespace = operation.namespace(joinPoint.getTarget(), generation(operation));
+            key = operation.key(namespace, suffix);
+            if (operation.verifyKey) {
+                originalKey = operation.key(namespace, operation.rawKeySuffix(args));
+            }
+            localTtl = getLocalTtl(operation);
 
-            // 读取缓存
-            String s = get(key);
+            // 布隆过滤器判定数据不存在
+            if (!operation.cacheName.isEmpty() && !operation.returnType.isPrimitive()) {
+                BloomFilter filter = bloomFilters.get(operation.cacheName);
+                String rawSuffix = filter == null || !operation.hashKey ? suffix : operation.rawKeySuffix(args);
+                if (filter != null && !filter.mightContain(rawSuffix.isEmpty() ? rawSuffix : rawSuffix.substring(1))) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("布隆过滤器判定不存在:" + key);
+                    }
+                    return operation.absentResult();
+                }
+            }
 
-            // 缓存命中, 返回缓存数据
-            if (s != null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("缓存命中:" + key);
+            // 统计热点key, 读取热点key的本地副本
+            HotKeyDetector detector = hotKeyDetector;
+            if (detector != null) {
+                detector.record(operation.statsName(), key);
+                NearCache replica = hotKeyReplica;
+                Object hot = replica == null ? null : replica.get(key);
+                if (hot != null) {
+                    operation.stats.localHits.increment();
+                    Object value = hot == NULL_VALUE ? null : hot;
+                    return operation.async ? CompletableFuture.completedFuture(value) : value;
+                }
+            }
+
+            // 读取近端缓存
+            NearCache near = nearCache;
+            if (localTtl > 0 && near != null) {
+                Object local = near.get(key);
+                if (local != null) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("近端缓存命中:" + key);
+                    }
+                    operation.stats.localHits.increment();
+                    Object value = local == NULL_VALUE ? null : local;
+                    return operation.async ? CompletableFuture.completedFuture(value) : value;
+                }
+            }
+
+            // 读取堆外缓存
+            long offHeapTtl = getOffHeapTtl(operation);
+            if (offHeapTtl > 0) {
+                Object s = getOffHeap(operation, key);
+                Object value = s == null ? MISS
+                        : cachedValue(joinPoint, operation, key, originalKey, localTtl, s, operation.stats.offHeapHits);
+                if (value != MISS) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("堆外缓存命中:" + key);
+                    }
+                    return operation.async ? CompletableFuture.completedFuture(value) : value;
+                }
+            }
+
+            CircuitBreaker breaker = circuitBreaker;
+            if (breaker != null && !breaker.allowRequest()) {
+                bypass = true;
+            } else if (operation.async) {
+                // 异步方法异步读取缓存, 未命中时在读取完成后执行方法
+                return doCacheAsync(joinPoint, operation, key, originalKey, localTtl);
+            } else {
+                // 读取缓存
+                long start = System.nanoTime();
+                Object s = readSerialized(key);
+                operation.stats.readLatency.record(System.nanoTime() - start);
+                if (s == TIMEOUT) {
+                    bypass = true;
+                } else {
+                    // 缓存命中, 返回缓存数据
+                    Object value = cachedValue(joinPoint, operation, key, originalKey, localTtl, s, operation.stats.hits);
+                    if (value != MISS) {
+                        putOffHeap(operation, key, s, offHeapTtl);
+                        return value;
+                    }
                 }
-                Class<?> returnType = signature.getReturnType();
-                return returnType == void.class ? null : parseObject(s, returnType);
             }
         } catch (Throwable t) {
+            if (operation != null && operation.stats != null) {
+                operation.stats.errors.increment();
+            }
             log.warn("查询缓存出错", t);
         }
 
+        if (bypass) {
+            operation.stats.bypasses.increment();
+            return joinPoint.proceed();
+        }
+
         // 缓存未命中, 执行切面方法
         if (log.isDebugEnabled()) {
             log.debug("缓存未命中:" + key);
         }
+        if (key == null) {
+            return joinPoint.proceed();
+        }
+        operation.stats.misses.increment();
+        if (operation.async) {
+            // 读取缓存前出错的异步方法, 同样以异步方式合并请求, 不能等待同步合并的结果
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            loadAsync(joinPoint, operation, key, originalKey, localTtl, result);
+            return result;
+        }
+        if (operation.syncTimeout <= 0) {
+            return proceedAndPut(joinPoint, operation, key, originalKey, localTtl);
+        }
+
+        // 合并并发请求, 仅由首个线程执行方法并写入缓存
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inflight.putIfAbsent(key, flight);
+        if (running != null) {
+            return awaitInflight(joinPoint, key, running, operation.syncTimeout);
+        }
+        try {
+            Object proceed = proceedAndPut(joinPoint, operation, key, originalKey, localTtl);
+            flight.complete(proceed);
+            return proceed;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            inflight.remove(key, flight);
+        }
+    }
+
+    // 读取缓存, 设置了读取时限时超时返回TIMEOUT
+    private Object readSerialized(String key) throws Throwable {
+        long deadline = readDeadlineMillis;
+        try {
+            Object s;
+            if (deadline <= 0) {
+                s = getSerialized(key);
+            } else {
+                Executor executor = readExecutor;
+                CompletableFuture<Object> future = executor == null ? getSerializedAsync(key)
+                        : CompletableFuture.supplyAsync(() -> getSerialized(key), executor);
+                s = future.get(deadline, TimeUnit.MILLISECONDS);
+            }
+            onCacheSuccess();
+            return s;
+        } catch (TimeoutException e) {
+            onCacheFailure();
+            if (log.isDebugEnabled()) {
+                log.debug("读取缓存超时:" + key);
+            }
+            return TIMEOUT;
+        } catch (ExecutionException e) {
+            onCacheFailure();
+            throw e.getCause();
+        } catch (Throwable t) {
+            onCacheFailure();
+            throw t;
+        }
+    }
+
+    private void onCacheSuccess() {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+    }
+
+    private void onCacheFailure() {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null) {
+            breaker.onFailure();
+        }
+    }
+
+    // 解析读取到的缓存值, 未命中或原始key不一致时返回MISS, 命中时计入所在层级的命中数hitCounter
+    private Object cachedValue(ProceedingJoinPoint joinPoint, CacheOperation operation, String key,
+                               String originalKey, long localTtl, Object s, LongAdder hitCounter) {
+        // 原始key不一致, 散列碰撞或未保存原始key的旧缓存, 按未命中处理并覆盖
+        if (s != null && originalKey != null) {
+            s = KeyEnvelope.unwrap(s, originalKey);
+            if (s == null) {
+                log.warn("缓存key校验不一致:{}, 原始key:{}", key, originalKey);
+            }
+        }
+        if (s == null) {
+            return MISS;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("缓存命中:" + key);
+        }
+        hitCounter.increment();
+        Class<?> valueType = operation.valueType;
+        if (valueType == void.class) {
+            return null;
+        }
+        if (operation.refresh > 0) {
+            RefreshEnvelope envelope = RefreshEnvelope.unwrap(s);
+            if (envelope != null) {
+                s = envelope.payload;
+                if (envelope.shouldRefresh(System.currentTimeMillis())) {
+                    refreshAsync(joinPoint, operation, key, originalKey, localTtl);
+                }
+            }
+        }
+        Object value = deserialize(s, valueType, operation.stats);
+        putLocal(key, value, localTtl);
+        promoteHotKey(operation, key, value);
+        return value;
+    }
+
+    // 写入近端缓存, 期间被setNearCache(null)关闭时跳过
+    private void putLocal(String key, Object value, long localTtl) {
+        NearCache near = nearCache;
+        if (localTtl > 0 && near != null) {
+            near.put(key, value == null ? NULL_VALUE : value, localTtl);
+        }
+    }
+
+    // 将热点key的缓存值复制到本地
+    private void promoteHotKey(CacheOperation operation, String key, Object value) {
+        NearCache replica = hotKeyReplica;
+        HotKeyDetector detector = hotKeyDetector;
+        if (replica != null && detector != null && detector.isHot(operation.statsName(), key)) {
+            long ttl = hotKeyTtlMillis;
+            if (operation.timeout > 0) {
+                ttl = Math.min(ttl, TimeUnit.SECONDS.toMillis(operation.timeout));
+            }
+            replica.put(key, value == null ? NULL_VALUE : value, ttl);
+            if (log.isDebugEnabled()) {
+                log.debug("热点key复制到本地:" + key);
+            }
+        }
+    }
+
+    /**
+     * 返回CompletionStage的方法, 通过{@link #getAsync(String)}读取缓存, 读取已在调用线程中完成时直接处理结果,
+     * 否则转到{@link #setAsyncExecutor(Executor)}的线程池中解码, 未命中时执行方法, 方法返回的CompletionStage完成后再写入缓存.
+     * 读取时同步抛出的异常与异步读取出错同样处理. 合并请求时其余调用共享首个调用的结果, 不受syncTimeout限制.
+     */
+    private CompletableFuture<Object> doCacheAsync(ProceedingJoinPoint joinPoint, CacheOperation operation,
+                                                   String key, String originalKey, long localTtl) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        CompletableFuture<Object> read;
+        try {
+            read = getSerializedAsync(key);
+        } catch (Throwable t) {
+            read = new CompletableFuture<>();
+            read.completeExceptionally(t);
+        }
+        if (read.isDone()) {
+            read.whenComplete((s, error) -> onReadAsync(joinPoint, operation, key, originalKey, localTtl, result,
+                    start, s, error));
+        } else {
+            read.whenComplete((s, error) -> executeAsync(() -> onReadAsync(joinPoint, operation, key, originalKey,
+                    localTtl, result, start, s, error)));
+        }
+        return result;
+    }
+
+    // 处理异步读取的缓存, 命中时完成result, 否则执行方法
+    private void onReadAsync(ProceedingJoinPoint joinPoint, CacheOperation operation, String key, String originalKey,
+                             long localTtl, CompletableFuture<Object> result, long start, Object s, Throwable error) {
+        try {
+            Object value = MISS;
+            Throwable t = error;
+            if (t == null) {
+                onCacheSuccess();
+                operation.stats.readLatency.record(System.nanoTime() - start);
+                try {
+                    value = cachedValue(joinPoint, operation, key, originalKey, localTtl, s, operation.stats.hits);
+                    if (value != MISS) {
+                        putOffHeap(operation, key, s, getOffHeapTtl(operation));
+                    }
+                } catch (Throwable e) {
+                    t = e;
+                }
+            }
+            if (error != null) {
+                onCacheFailure();
+            }
+            if (t != null) {
+                operation.stats.errors.increment();
+                log.warn("查询缓存出错", t);
+            }
+            if (value != MISS) {
+                result.complete(value);
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("缓存未命中:" + key);
+            }
+            operation.stats.misses.increment();
+            loadAsync(joinPoint, operation, key, originalKey, localTtl, result);
+        } catch (Throwable t) {
+            complete(result, null, t);
+        }
+    }
+
+    // 在异步线程池中执行, 线程池拒绝时在当前线程执行
+    private void executeAsync(Runnable task) {
+        try {
+            getAsyncExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    asyncExecutor = executor = IoExecutors.newIoExecutor("cache-async");
+                }
+            }
+        }
+        return executor;
+    }
+
+    private void loadAsync(ProceedingJoinPoint joinPoint, CacheOperation operation, String key, String originalKey,
+                           long localTtl, CompletableFuture<Object> result) {
+        boolean leader = operation.syncTimeout > 0;
+        if (leader) {
+            CompletableFuture<Object> running = inflight.putIfAbsent(key, result);
+            if (running != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("合并请求:" + key);
+                }
+                running.whenComplete((value, t) -> complete(result, value, t));
+                return;
+            }
+        }
+        try {
+            CompletionStage<?> stage = (CompletionStage<?>) proceedAndPut(joinPoint, operation, key, originalKey, localTtl);
+            if (stage == null) {
+                complete(result, null, null);
+            } else {
+                stage.whenComplete((value, t) -> complete(result, value, t));
+            }
+        } catch (Throwable t) {
+            complete(result, null, t);
+        } finally {
+            if (leader) {
+                result.whenComplete((value, t) -> inflight.remove(key, result));
+            }
+        }
+    }
+
+    private static void complete(CompletableFuture<Object> future, Object value, Throwable t) {
+        if (t == null) {
+            future.complete(value);
+        } else {
+            future.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+        }
+    }
+
+    // 执行方法并写入缓存, 异步方法在其返回的CompletionStage完成后写入
+    private Object proceedAndPut(ProceedingJoinPoint joinPoint, CacheOperation operation, String key,
+                                 String originalKey, long localTtl) throws Throwable {
+        long start = System.nanoTime();
         Object proceed = joinPoint.proceed();
+        if (operation.async) {
+            if (proceed != null) {
+                ((CompletionStage<?>) proceed).whenComplete((value, t) -> {
+                    if (t == null) {
+                        long elapsed = System.nanoTime() - start;
+                        operation.stats.loadLatency.record(elapsed);
+                        putCache(operation, key, originalKey, localTtl, value, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                    }
+                });
+            }
+            return proceed;
+        }
+        long elapsed = System.nanoTime() - start;
+        operation.stats.loadLatency.record(elapsed);
+        putCache(operation, key, originalKey, localTtl, proceed, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return proceed;
+    }
 
-        // 写入缓存
+    private void putCache(CacheOperation operation, String key, String originalKey, long localTtl, Object proceed,
+                          long computeMillis) {
         try {
-            if (key != null) {
-                setex(key, timeout > 0 ? timeout : maxTimeout, toJSONString(proceed));
+            long seconds = operation.timeout > 0 ? operation.timeout : maxTimeout;
+            if (proceed == null && operation.nullTimeout >= 0) {
+                if (operation.nullTimeout == 0) {
+                    return;
+                }
+                seconds = operation.nullTimeout;
+            }
+            Object serialized = serialize(proceed, operation.stats);
+            if (operation.refresh > 0) {
+                long softExpireAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(operation.refresh);
+                serialized = RefreshEnvelope.wrap(serialized, softExpireAt, computeMillis);
+            }
+            if (originalKey != null) {
+                serialized = KeyEnvelope.wrap(serialized, originalKey);
+            }
+            WriteBehindQueue<Object> queue = writeBehindQueue;
+            if (queue == null && operation.async) {
+                setexSerializedAsync(key, seconds, serialized).whenComplete((v, t) -> {
+                    if (t != null) {
+                        operation.stats.errors.increment();
+                        onCacheFailure();
+                        log.warn("写入缓存出错", t);
+                    } else if (log.isDebugEnabled()) {
+                        log.debug("写入缓存:" + key);
+                    }
+                });
+            } else if (queue == null) {
+                setexSerialized(key, seconds, serialized);
                 if (log.isDebugEnabled()) {
                     log.debug("写入缓存:" + key);
                 }
+            } else if (!queue.offer(key, seconds, serialized) && log.isDebugEnabled()) {
+                // 丢弃数由队列计数, 避免队列满时大量打印日志
+                log.debug("异步写缓存队列已满, 丢弃:" + key);
             }
+            putLocal(key, proceed, proceed == null ? Math.min(localTtl, TimeUnit.SECONDS.toMillis(seconds)) : localTtl);
+            putOffHeap(operation, key, serialized, Math.min(getOffHeapTtl(operation), TimeUnit.SECONDS.toMillis(seconds)));
         } catch (Throwable t) {
+            operation.stats.errors.increment();
+            onCacheFailure();
             log.warn("写入缓存出错", t);
         }
+    }
 
-        return proceed;
+    // 后台刷新缓存, 同一key同时只有一个刷新任务, 刷新线程池已满时放弃本次刷新
+    private void refreshAsync(ProceedingJoinPoint joinPoint, CacheOperation operation, String key, String originalKey,
+                              long localTtl) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    proceedAndPut(joinPoint, operation, key, originalKey, localTtl);
+                    if (log.isDebugEnabled()) {
+                        log.debug("提前刷新缓存:" + key);
+                    }
+                } catch (Throwable t) {
+                    log.warn("提前刷新缓存:{}出错", key, t);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private Executor getRefreshExecutor() {
+        Executor executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = refreshExecutor;
+                if (executor == null) {
+                    // 队列有界时线程数超过核心线程数才会在队列满后创建, 故核心线程数与最大线程数相同, 空闲时允许回收
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    int threads = Math.max(2, RuntimeUtil.getCores());
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), r -> {
+                        Thread thread = new Thread(r, "cache-refresh-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pool.allowCoreThreadTimeOut(true);
+                    refreshExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    // 等待正在执行的请求结果, 超时则自行执行方法, 不写缓存
+    private Object awaitInflight(ProceedingJoinPoint joinPoint, String key, CompletableFuture<Object> running,
+                                 int syncTimeout) throws Throwable {
+        try {
+            Object result = running.get(syncTimeout, TimeUnit.MILLISECONDS);
+            if (log.isDebugEnabled()) {
+                log.debug("合并请求:" + key);
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            log.warn("等待合并请求超时:{}", key);
+            return joinPoint.proceed();
+        }
+    }
+
+    @Around("batchCacheCut()")
+    public Object doBatchCache(ProceedingJoinPoint joinPoint) throws Throwable {
+        BatchCacheOperation operation = null;
+        Object[] args = joinPoint.getArgs();
+        Collection<?> ids = null;
+        String namespace = null;
+        // 缓存key及其对应的入参id, 保持入参顺序并去重
+        Map<String, Object> idsByKey = null;
+        // 缓存key及其对应的元素
+        Map<String, Object> values = null;
+        try {
+            operation = getBatchOperation((MethodSignature) joinPoint.getSignature());
+            ids = (Collection<?>) args[operation.index];
+            CircuitBreaker breaker = circuitBreaker;
+            if (ids != null && !ids.isEmpty() && breaker != null && !breaker.allowRequest()) {
+                operation.operation.stats.bypasses.increment();
+            } else if (ids != null && !ids.isEmpty()) {
+                CacheOperation elementOperation = operation.operation;
+                BloomFilter filter = elementOperation.cacheName.isEmpty() ? null
+                        : bloomFilters.get(elementOperation.cacheName);
+                namespace = elementOperation.namespace(joinPoint.getTarget(), generation(elementOperation));
+                idsByKey = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+                for (Object id : ids) {
+                    // 跳过布隆过滤器判定不存在的id
+                    if (filter == null || filter.mightContain(String.valueOf(id))) {
+                        idsByKey.put(elementOperation.elementKey(namespace, id), id);
+                    }
+                }
+                values = mgetObjects(idsByKey.keySet(), operation.elementType, elementOperation.stats);
+                if (values == null) {
+                    elementOperation.stats.bypasses.increment();
+                }
+            }
+        } catch (Throwable t) {
+            if (operation != null) {
+                operation.operation.stats.errors.increment();
+            }
+            log.warn("批量查询缓存出错", t);
+            values = null;
+        }
+        if (values == null) {
+            return joinPoint.proceed();
+        }
+
+        CacheStats stats = operation.operation.stats;
+        stats.hits.add(values.size());
+        stats.misses.add(idsByKey.size() - values.size());
+        if (values.size() == idsByKey.size()) {
+            // 全部命中或被布隆过滤器过滤
+            if (log.isDebugEnabled()) {
+                log.debug("批量缓存全部命中:" + idsByKey.keySet());
+            }
+            return operation.merge(idsByKey, values);
+        }
+
+        // 仅以未命中的id执行切面方法
+        Collection<Object> missing = operation.newIds(ids, idsByKey.size() - values.size());
+        for (Map.Entry<String, Object> entry : idsByKey.entrySet()) {
+            if (!values.containsKey(entry.getKey())) {
+                missing.add(entry.getValue());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("批量缓存未命中:" + missing);
+        }
+        Object[] missingArgs = args.clone();
+        missingArgs[operation.index] = missing;
+        long start = System.nanoTime();
+        Object proceed = joinPoint.proceed(missingArgs);
+        stats.loadLatency.record(System.nanoTime() - start);
+
+        // 写入缓存
+        try {
+            Map<String, Object> loaded = new LinkedHashMap<>();
+            CacheOperation elementOperation = operation.operation;
+            String elementNamespace = namespace;
+            Map<String, Object> merged = values;
+            operation.forEachResult(proceed, (id, element) -> {
+                String key = elementOperation.elementKey(elementNamespace, id);
+                merged.put(key, element);
+                loaded.put(key, serialize(element, stats));
+            });
+            long seconds = elementOperation.timeout > 0 ? elementOperation.timeout : maxTimeout;
+            putSerialized(loaded, seconds);
+            if (elementOperation.nullTimeout > 0) {
+                // 以null缓存方法未返回的id
+                Map<String, Object> absent = new LinkedHashMap<>();
+                Object serializedNull = null;
+                for (String key : idsByKey.keySet()) {
+                    if (!values.containsKey(key)) {
+                        if (serializedNull == null) {
+                            serializedNull = serialize(null, stats);
+                        }
+                        absent.put(key, serializedNull);
+                    }
+                }
+                putSerialized(absent, elementOperation.nullTimeout);
+            }
+        } catch (Throwable t) {
+            stats.errors.increment();
+            log.warn("批量写入缓存出错", t);
+        }
+        return operation.merge(idsByKey, values);
     }
 
     @Around("cacheEvictCut()")
@@ -94,9 +992,23 @@ public abstract class RedisCacheAdvice {
         String key = "";
         try {
             MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            key = getEvictKey(signature, joinPoint);
+            CacheOperation operation = getEvictOperation(signature);
+            if (operation.allEntries) {
+                key = operation.cacheName;
+                evictAll(operation);
+                return proceed;
+            }
+            key = operation.key(operation.namespace(joinPoint.getTarget(), generation(operation)),
+                    operation.keySuffix(joinPoint.getArgs()));
             if (!key.isEmpty()) {
+                WriteBehindQueue<Object> queue = writeBehindQueue;
+                if (queue != null) {
+                    queue.invalidate(key);
+                }
                 del(key);
+                operation.stats.evictions.increment();
+                invalidateLocal(key);
+                publishInvalidation(key);
                 if (log.isDebugEnabled()) {
                     log.debug("删除缓存:" + key);
                 }
@@ -108,45 +1020,356 @@ public abstract class RedisCacheAdvice {
         return proceed;
     }
 
-    private Pair<String, Integer> getCacheKeyAndTimeout(MethodSignature signature, ProceedingJoinPoint joinPoint) {
+    // 递增命名空间版本号, 使该缓存名下的全部缓存失效
+    private void evictAll(CacheOperation operation) {
+        if (generationRefreshMillis < 0 || operation.cacheName.isEmpty()) {
+            log.warn("未开启命名空间版本或未指定缓存名, 无法删除全部缓存:{}", operation.method);
+            return;
+        }
+        long generation = incr(generationKey(operation.cacheName));
+        generations.put(operation.cacheName, new Generation(generation, System.currentTimeMillis()));
+        operation.stats.evictions.increment();
+        publishInvalidation(generationKey(operation.cacheName));
+        if (log.isDebugEnabled()) {
+            log.debug("删除全部缓存:" + operation.cacheName + ", 版本号:" + generation);
+        }
+    }
+
+    /**
+     * 缓存名当前的命名空间版本号, 未开启或未指定缓存名时返回-1.
+     * 版本号在本地缓存generationRefreshMillis毫秒, 过期后由一个线程重新读取, 其余线程继续使用旧版本号.
+     * 尚无已知版本号且熔断或读取超时时抛出异常, 本次调用不使用缓存.
+     */
+    private long generation(CacheOperation operation) {
+        long refreshMillis = generationRefreshMillis;
+        if (refreshMillis < 0 || operation.cacheName.isEmpty()) {
+            return -1;
+        }
+        String cacheName = operation.cacheName;
+        long now = System.currentTimeMillis();
+        Generation generation = generations.get(cacheName);
+        if (generation != null && now - generation.fetchedAt < refreshMillis) {
+            return generation.value;
+        }
+        if (generation != null && !generation.refreshing.compareAndSet(false, true)) {
+            return generation.value;
+        }
+        // 与读取缓存值一样受熔断及读取时限控制, 熔断或超时时继续使用已知的版本号
+        Throwable error = null;
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker == null || breaker.allowRequest()) {
+            try {
+                Object s = readSerialized(generationKey(cacheName));
+                if (s != TIMEOUT) {
+                    String value = s instanceof byte[] ? new String((byte[]) s, StandardCharsets.UTF_8) : (String) s;
+                    Generation fetched = new Generation(value == null ? 0 : Long.parseLong(value), now);
+                    generations.put(cacheName, fetched);
+                    return fetched.value;
+                }
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+        if (generation == null) {
+            throw new IllegalStateException("无法读取缓存版本号:" + cacheName, error);
+        }
+        if (error != null) {
+            log.warn("读取缓存版本号出错:{}", cacheName, error);
+        }
+        generations.put(cacheName, new Generation(generation.value, now));
+        return generation.value;
+    }
+
+    private String generationKey(String cacheName) {
+        return cacheKeyPrefix + cacheName + GENERATION_SUFFIX;
+    }
+
+    private CacheOperation getCacheOperation(MethodSignature signature) {
         Method method = signature.getMethod();
-        Cacheable cacheable = method.getAnnotation(Cacheable.class);
-        String cacheName = cacheable.value();
-        String key = cacheable.key();
-        String cacheKey = cacheKeyPrefix + processKey(signature, joinPoint, method, cacheName, key);
-        return Pair.of(cacheKey, cacheable.timeout(), false);
+        CacheOperation operation = cacheOperations.get(method);
+        if (operation == null) {
+            operation = CacheOperation.of(method, signature.getParameterNames(), cacheKeyPrefix,
+                    method.getAnnotation(Cacheable.class), parser);
+            operation.stats = getStats(operation);
+            CacheOperation exists = cacheOperations.putIfAbsent(method, operation);
+            if (exists != null) {
+                operation = exists;
+            }
+        }
+        return operation;
     }
 
-    private String getEvictKey(MethodSignature signature, ProceedingJoinPoint joinPoint) {
+    private CacheOperation getEvictOperation(MethodSignature signature) {
         Method method = signature.getMethod();
-        CacheEvict evict = method.getAnnotation(CacheEvict.class);
-        String cacheName = evict.value();
-        String key = evict.key();
-        return cacheKeyPrefix + processKey(signature, joinPoint, method, cacheName, key);
+        CacheOperation operation = evictOperations.get(method);
+        if (operation == null) {
+            operation = CacheOperation.of(method, signature.getParameterNames(), cacheKeyPrefix,
+                    method.getAnnotation(CacheEvict.class), parser);
+            operation.stats = getStats(operation);
+            CacheOperation exists = evictOperations.putIfAbsent(method, operation);
+            if (exists != null) {
+                operation = exists;
+            }
+        }
+        return operation;
     }
 
-    private String processKey(MethodSignature signature, ProceedingJoinPoint joinPoint, Method method, String cacheName, String key) {
-        StringBuilder cacheKey = new StringBuilder(cacheName);
-        if (cacheKey.length() == 0) {
-            cacheKey = new StringBuilder(joinPoint.getTarget().getClass().getSimpleName());
-            cacheKey.append(":").append(method.getName());
+    // 同步或异步批量写入序列化后的缓存
+    private void putSerialized(Map<String, Object> keyValues, long seconds) {
+        if (keyValues.isEmpty()) {
+            return;
         }
-        Object[] args = joinPoint.getArgs();
-        if (key.isEmpty()) {
-            for (Object arg : args) {
-                cacheKey.append(":").append(arg);
+        WriteBehindQueue<Object> queue = writeBehindQueue;
+        if (queue == null) {
+            msetexSerialized(keyValues, seconds);
+        } else {
+            for (Map.Entry<String, Object> entry : keyValues.entrySet()) {
+                queue.offer(entry.getKey(), seconds, entry.getValue());
             }
+        }
+    }
+
+    // 批量读取并解析缓存, 返回命中的缓存key及其对应的元素, 读取超时返回null
+    private Map<String, Object> mgetObjects(Set<String> keySet, Class<?> elementType, CacheStats stats)
+            throws Throwable {
+        List<String> keys = new ArrayList<>(keySet);
+        long start = System.nanoTime();
+        List<?> cached = mgetSerialized(keys);
+        stats.readLatency.record(System.nanoTime() - start);
+        if (cached == null) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (int i = 0; i < keys.size(); i++) {
+            Object s = cached.get(i);
+            if (s != null) {
+                s = unwrapEnvelopes(keys.get(i), s);
+            }
+            if (s != null) {
+                values.put(keys.get(i), deserialize(s, elementType, stats));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 解开与{@link Cacheable}共用缓存时的外层包装({@link KeyEnvelope}, {@link RefreshEnvelope}).
+     * 原始key不一致或已超过软过期时间时返回null, 按未命中与其他id一起重新加载
+     */
+    private static Object unwrapEnvelopes(String key, Object s) {
+        if (KeyEnvelope.isWrapped(s)) {
+            s = KeyEnvelope.unwrap(s, key);
+            if (s == null) {
+                log.warn("缓存key校验不一致:{}", key);
+                return null;
+            }
+        }
+        RefreshEnvelope envelope = RefreshEnvelope.unwrap(s);
+        if (envelope != null) {
+            if (envelope.softExpireAt <= System.currentTimeMillis()) {
+                return null;
+            }
+            s = envelope.payload;
+        }
+        return s;
+    }
+
+    // 批量读取缓存, 设置了读取时限及读取线程池时超时返回null
+    private List<?> mgetSerialized(List<String> keys) throws Throwable {
+        // 全部被布隆过滤器过滤, redis的MGET不接受空的key列表
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long deadline = readDeadlineMillis;
+        Executor executor = readExecutor;
+        Binary b = binary;
+        try {
+            List<?> cached;
+            if (deadline <= 0 || executor == null) {
+                cached = b == null ? mget(keys) : b.store.mgetBytes(keys);
+            } else {
+                cached = CompletableFuture.supplyAsync(() -> b == null ? mget(keys) : b.store.mgetBytes(keys), executor)
+                        .get(deadline, TimeUnit.MILLISECONDS);
+            }
+            onCacheSuccess();
+            return cached;
+        } catch (TimeoutException e) {
+            onCacheFailure();
+            if (log.isDebugEnabled()) {
+                log.debug("批量读取缓存超时:" + keys);
+            }
+            return null;
+        } catch (ExecutionException e) {
+            onCacheFailure();
+            throw e.getCause();
+        } catch (Throwable t) {
+            onCacheFailure();
+            throw t;
+        }
+    }
+
+    // 序列化为String或byte[]
+    private Object serialize(Object value, CacheStats stats) {
+        long start = System.nanoTime();
+        Binary b = binary;
+        Object serialized = b == null ? toJSONString(value) : b.codec.encode(value);
+        stats.serializeLatency.record(System.nanoTime() - start);
+        return serialized;
+    }
+
+    private Object deserialize(Object serialized, Class<?> type, CacheStats stats) {
+        long start = System.nanoTime();
+        Object value = serialized instanceof byte[]
+                ? requireBinary().codec.decode((byte[]) serialized, type)
+                : parseObject((String) serialized, type);
+        stats.serializeLatency.record(System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * 读取堆外缓存中序列化后的值. 首字节区分String和byte[], 其后4字节为返回值泛型类型的{@link ClassFingerprint},
+     * 与当前类型不一致时(如快照由旧版本写入)删除并按未命中处理. 读取出错时按未命中处理, 继续读取redis
+     */
+    private Object getOffHeap(CacheOperation operation, String key) {
+        OffHeapCacheStore store = offHeapStore;
+        byte[] value;
+        try {
+            value = store == null ? null : store.get(key);
+        } catch (RuntimeException e) {
+            log.warn("读取堆外缓存出错:{}", key, e);
+            return null;
+        }
+        if (value == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        byte type = buffer.get();
+        if (buffer.getInt() != operation.valueFingerprint) {
+            store.remove(key);
+            if (log.isDebugEnabled()) {
+                log.debug("堆外缓存类型版本不一致:" + key);
+            }
+            return null;
+        }
+        return type == 1 ? Arrays.copyOfRange(value, OFF_HEAP_HEADER, value.length)
+                : new String(value, OFF_HEAP_HEADER, value.length - OFF_HEAP_HEADER, StandardCharsets.UTF_8);
+    }
+
+    // 写入堆外缓存, 出错时只打印日志, 不影响已读到的redis缓存值及熔断统计
+    private void putOffHeap(CacheOperation operation, String key, Object serialized, long ttlMillis) {
+        OffHeapCacheStore store = offHeapStore;
+        if (store == null || ttlMillis <= 0) {
+            return;
+        }
+        try {
+            boolean binary = serialized instanceof byte[];
+            byte[] bytes = binary ? (byte[]) serialized : ((String) serialized).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer value = ByteBuffer.allocate(OFF_HEAP_HEADER + bytes.length);
+            value.put((byte) (binary ? 1 : 0)).putInt(operation.valueFingerprint).put(bytes);
+            store.put(key, value.array(), ttlMillis);
+        } catch (RuntimeException e) {
+            log.warn("写入堆外缓存出错:{}", key, e);
+        }
+    }
+
+    private Object getSerialized(String key) {
+        Binary b = binary;
+        return b == null ? get(key) : b.store.getBytes(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> getSerializedAsync(String key) {
+        Binary b = binary;
+        CompletableFuture<?> future = b == null ? getAsync(key) : b.store.getBytesAsync(key);
+        return (CompletableFuture<Object>) future;
+    }
+
+    // 已序列化为byte[]时须设置了编解码, 否则为切换编解码期间的旧值
+    private Binary requireBinary() {
+        Binary b = binary;
+        if (b == null) {
+            throw new IllegalStateException("cacheCodec is not set");
+        }
+        return b;
+    }
+
+    private CompletableFuture<Void> setexSerializedAsync(String key, long seconds, Object serialized) {
+        if (serialized instanceof byte[]) {
+            return requireBinary().store.setexAsync(key, seconds, (byte[]) serialized);
+        }
+        return setexAsync(key, seconds, (String) serialized);
+    }
+
+    private void setexSerialized(String key, long seconds, Object serialized) {
+        if (serialized instanceof byte[]) {
+            requireBinary().store.setex(key, seconds, (byte[]) serialized);
         } else {
-            // SPEL上下文
-            StandardEvaluationContext context = new StandardEvaluationContext();
-            String[] parameterNames = signature.getParameterNames();
-            for (int i = 0; i < args.length; i++) {
-                context.setVariable(parameterNames[i], args[i]);
+            setex(key, seconds, (String) serialized);
+        }
+    }
+
+    // 按String和byte[]分别批量写入
+    private void msetexSerialized(Map<String, Object> keyValues, long seconds) {
+        Map<String, String> strings = null;
+        Map<String, byte[]> bytes = null;
+        for (Map.Entry<String, Object> entry : keyValues.entrySet()) {
+            if (entry.getValue() instanceof byte[]) {
+                if (bytes == null) {
+                    bytes = new LinkedHashMap<>();
+                }
+                bytes.put(entry.getKey(), (byte[]) entry.getValue());
+            } else {
+                if (strings == null) {
+                    strings = new LinkedHashMap<>();
+                }
+                strings.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        if (strings != null) {
+            msetex(strings, seconds);
+        }
+        if (bytes != null) {
+            requireBinary().store.msetexBytes(bytes, seconds);
+        }
+    }
+
+    private BatchCacheOperation getBatchOperation(MethodSignature signature) {
+        Method method = signature.getMethod();
+        BatchCacheOperation operation = batchOperations.get(method);
+        if (operation == null) {
+            operation = BatchCacheOperation.of(method, signature.getParameterNames(), cacheKeyPrefix,
+                    method.getAnnotation(BatchCacheable.class), parser);
+            operation.operation.stats = getStats(operation.operation);
+            BatchCacheOperation exists = batchOperations.putIfAbsent(method, operation);
+            if (exists != null) {
+                operation = exists;
             }
-            Object value = parser.parseExpression(key).getValue(context);
-            cacheKey.append(":").append(value);
         }
-        return cacheKey.toString();
+        return operation;
+    }
+
+    private CacheStats getStats(CacheOperation operation) {
+        return cacheStats.computeIfAbsent(operation.statsName(), CacheStats::new);
+    }
+
+    // 近端缓存的存活毫秒数, 0为不启用
+    private long getLocalTtl(CacheOperation operation) {
+        if (nearCache == null || operation.localTimeout <= 0 || operation.returnType == void.class) {
+            return 0;
+        }
+        int timeout = operation.timeout;
+        int localTimeout = operation.localTimeout;
+        return TimeUnit.SECONDS.toMillis(timeout > 0 ? Math.min(localTimeout, timeout) : localTimeout);
+    }
+
+    // 堆外缓存的存活毫秒数, 0为不启用
+    private long getOffHeapTtl(CacheOperation operation) {
+        if (offHeapStore == null || operation.offHeapTimeout <= 0 || operation.returnType == void.class) {
+            return 0;
+        }
+        int timeout = operation.timeout;
+        int offHeapTimeout = operation.offHeapTimeout;
+        return TimeUnit.SECONDS.toMillis(timeout > 0 ? Math.min(offHeapTimeout, timeout) : offHeapTimeout);
     }
 
     protected abstract String get(String key);
@@ -155,7 +1378,71 @@ public abstract class RedisCacheAdvice {
 
     protected abstract void del(String key);
 
+    /**
+     * 原子递增并返回新值, 不存在时从0开始, 即redis的INCR. 用于{@link #enableNamespaceVersion(long)}的版本号
+     */
+    protected abstract long incr(String key);
+
+    /**
+     * 批量读取缓存, 用于批量缓存. 返回值与keys一一对应, 不存在的为null.
+     * 默认逐个调用{@link #get(String)}, 建议子类覆盖为mget.
+     */
+    protected List<String> mget(List<String> keys) {
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    /**
+     * 批量写入超时时间相同的缓存, 用于异步批量写缓存及批量缓存. 默认逐个调用{@link #setex(String, long, String)},
+     * 建议子类覆盖为pipeline批量写入.
+     */
+    protected void msetex(Map<String, String> keyValues, long seconds) {
+        for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+            setex(entry.getKey(), seconds, entry.getValue());
+        }
+    }
+
+    /**
+     * 异步读取缓存, 用于返回CompletableFuture或CompletionStage的方法. 默认在调用线程中执行{@link #get(String)},
+     * 使用非阻塞客户端时应覆盖, 避免阻塞事件循环线程
+     */
+    protected CompletableFuture<String> getAsync(String key) {
+        return CompletableFuture.completedFuture(get(key));
+    }
+
+    /**
+     * 异步写入缓存, 在异步方法的结果完成后调用. 默认在完成结果的线程中执行{@link #setex(String, long, String)}
+     */
+    protected CompletableFuture<Void> setexAsync(String key, long seconds, String value) {
+        setex(key, seconds, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
     protected abstract <T> T parseObject(String json, Class<T> target);
 
     protected abstract String toJSONString(Object object);
+
+    private static final class Binary {
+        final CacheCodec codec;
+        final BinaryCacheStore store;
+
+        Binary(CacheCodec codec, BinaryCacheStore store) {
+            this.codec = codec;
+            this.store = store;
+        }
+    }
+
+    private static final class Generation {
+        final long value;
+        final long fetchedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Generation(long value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
 }
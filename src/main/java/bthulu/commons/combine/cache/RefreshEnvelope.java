@@ -0,0 +1,99 @@
+package bthulu.commons.combine.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 提前刷新的缓存值外层包装, 在序列化后的缓存值前附加软过期时间和方法执行耗时.
+ *
+ * 字符串格式为<code>\u0002软过期时间:执行耗时:原值</code>, byte[]格式为3字节标记+8字节软过期时间+4字节执行耗时+原值.
+ * 未包装的旧缓存值按普通缓存处理, 不触发提前刷新.
+ */
+final class RefreshEnvelope {
+
+    private static final char STRING_MARK = '\u0002';
+
+    private static final byte[] BYTES_MARK = "\u0002RE".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int BYTES_HEADER = BYTES_MARK.length + 8 + 4;
+
+    // XFetch的beta参数, 大于1时更倾向于提前刷新
+    private static final double BETA = 1.0;
+
+    // 软过期时间, 毫秒时间戳
+    final long softExpireAt;
+
+    // 方法执行耗时, 单位:毫秒
+    final long computeMillis;
+
+    // 序列化后的原值, String或byte[]
+    final Object payload;
+
+    private RefreshEnvelope(long softExpireAt, long computeMillis, Object payload) {
+        this.softExpireAt = softExpireAt;
+        this.computeMillis = computeMillis;
+        this.payload = payload;
+    }
+
+    static Object wrap(Object serialized, long softExpireAt, long computeMillis) {
+        if (serialized instanceof byte[]) {
+            byte[] value = (byte[]) serialized;
+            ByteBuffer buffer = ByteBuffer.allocate(BYTES_HEADER + value.length);
+            buffer.put(BYTES_MARK).putLong(softExpireAt).putInt((int) Math.min(computeMillis, Integer.MAX_VALUE)).put(value);
+            return buffer.array();
+        }
+        return STRING_MARK + Long.toString(softExpireAt) + ':' + computeMillis + ':' + serialized;
+    }
+
+    /**
+     * 解析包装后的缓存值, 未包装的返回null
+     */
+    static RefreshEnvelope unwrap(Object serialized) {
+        if (serialized instanceof byte[]) {
+            byte[] value = (byte[]) serialized;
+            if (value.length < BYTES_HEADER) {
+                return null;
+            }
+            for (int i = 0; i < BYTES_MARK.length; i++) {
+                if (value[i] != BYTES_MARK[i]) {
+                    return null;
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(value, BYTES_MARK.length, 12);
+            long softExpireAt = buffer.getLong();
+            int computeMillis = buffer.getInt();
+            byte[] payload = new byte[value.length - BYTES_HEADER];
+            System.arraycopy(value, BYTES_HEADER, payload, 0, payload.length);
+            return new RefreshEnvelope(softExpireAt, computeMillis, payload);
+        }
+        String value = (String) serialized;
+        if (value.isEmpty() || value.charAt(0) != STRING_MARK) {
+            return null;
+        }
+        int first = value.indexOf(':');
+        int second = first < 0 ? -1 : value.indexOf(':', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        try {
+            long softExpireAt = Long.parseLong(value.substring(1, first));
+            long computeMillis = Long.parseLong(value.substring(first + 1, second));
+            return new RefreshEnvelope(softExpireAt, computeMillis, value.substring(second + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按XFetch算法判断是否需要刷新: now - computeMillis * beta * ln(random) >= softExpireAt.
+     * 越接近软过期时间, 执行耗时越长, 提前刷新的概率越大, 使同一批写入的缓存分散刷新; 超过软过期时间则必定刷新.
+     */
+    boolean shouldRefresh(long now) {
+        if (now >= softExpireAt) {
+            return true;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        return now - computeMillis * BETA * Math.log(random) >= softExpireAt;
+    }
+}
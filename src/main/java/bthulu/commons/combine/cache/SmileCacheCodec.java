@@ -0,0 +1,149 @@
+package bthulu.commons.combine.cache;
+
+import bthulu.commons.combine.exception.ExceptionUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.commons.lang3.Validate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 基于Jackson Smile二进制格式的缓存编解码, 超过阈值的数据再以deflate压缩.
+ *
+ * 编码结果首字节为格式标记: 0为未压缩, 1为压缩, 压缩时随后4字节为压缩前的长度.
+ * Smile省去了JSON的引号, 分隔符及重复的字段名, 数值按二进制存储, 对大的DTO列表体积和解析耗时都明显小于JSON字符串.
+ */
+public class SmileCacheCodec implements CacheCodec {
+
+    private static final byte RAW = 0;
+
+    private static final byte DEFLATED = 1;
+
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+
+    private final ObjectMapper mapper;
+
+    private final int compressThreshold;
+
+    public SmileCacheCodec() {
+        this(DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    /**
+     * @param compressThreshold 超过该字节数时压缩, 小于0不压缩
+     */
+    public SmileCacheCodec(int compressThreshold) {
+        this(defaultMapper(), compressThreshold);
+    }
+
+    /**
+     * @param mapper            以{@link SmileFactory}创建的ObjectMapper
+     * @param compressThreshold 超过该字节数时压缩, 小于0不压缩
+     */
+    public SmileCacheCodec(ObjectMapper mapper, int compressThreshold) {
+        Validate.isTrue(mapper.getFactory() instanceof SmileFactory, "mapper must be created by SmileFactory");
+        this.mapper = mapper;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] smile;
+        try {
+            smile = mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw ExceptionUtil.unchecked(e);
+        }
+        if (compressThreshold < 0 || smile.length <= compressThreshold) {
+            byte[] bytes = new byte[smile.length + 1];
+            bytes[0] = RAW;
+            System.arraycopy(smile, 0, bytes, 1, smile.length);
+            return bytes;
+        }
+        return deflate(smile);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        Validate.isTrue(bytes.length > 0, "empty cache value");
+        try {
+            if (bytes[0] == RAW) {
+                return mapper.readValue(bytes, 1, bytes.length - 1, type);
+            }
+            Validate.isTrue(bytes[0] == DEFLATED, "unknown cache value format: %s", bytes[0]);
+            return mapper.readValue(inflate(bytes), type);
+        } catch (IOException e) {
+            throw ExceptionUtil.unchecked(e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 5);
+            out.write(DEFLATED);
+            out.write(data.length >>> 24);
+            out.write(data.length >>> 16);
+            out.write(data.length >>> 8);
+            out.write(data.length);
+            byte[] buffer = new byte[Math.min(data.length, 8192)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        int length = ((bytes[1] & 0xff) << 24) | ((bytes[2] & 0xff) << 16) | ((bytes[3] & 0xff) << 8) | (bytes[4] & 0xff);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 5, bytes.length - 5);
+            byte[] data = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, n, length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            return n == length ? data : Arrays.copyOf(data, n);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ObjectMapper defaultMapper() {
+        ObjectMapper mp = new ObjectMapper(new SmileFactory());
+        mp.setTimeZone(TimeZone.getDefault());
+        try {
+            Class.forName("com.fasterxml.jackson.datatype.jsr310.JavaTimeModule");
+            mp.registerModule(new JavaTimeModule());
+        } catch (ClassNotFoundException ignored) {
+        }
+        try {
+            Class.forName("com.fasterxml.jackson.datatype.jdk8.Jdk8Module");
+            mp.registerModule(new Jdk8Module());
+        } catch (ClassNotFoundException ignored) {
+        }
+        mp.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return mp;
+    }
+}
@@ -0,0 +1,241 @@
+package bthulu.commons.combine.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 异步批量写缓存的有界队列.
+ *
+ * 1. 业务线程只负责入队, 由后台线程每次取出至多batchSize个元素, 按超时时间分组后批量写入, 同批次内重复的key只写最后一次
+ *
+ * 2. 队列满时最多等待offerTimeoutMillis毫秒, 仍无法入队则丢弃并计数, 缓存写入失败同样只计数不重试
+ *
+ * 3. 删除缓存时通过{@link #invalidate(String)}记录该key的删除序号, 写入时跳过删除前入队的旧值, 避免删除后又被旧值覆盖.
+ * 删除记录保留到序号更小的元素全部写入为止, 即没有已取得序号但尚未入队的元素且队列为空时才清理
+ *
+ * 4. 关闭时先等待后台线程写完当前批次, 再写完队列中剩余的元素
+ *
+ * @param <V> 序列化后的缓存值类型, String或byte[]
+ */
+public class WriteBehindQueue<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private final BlockingQueue<Entry<V>> queue;
+
+    private final int batchSize;
+
+    private final long offerTimeoutMillis;
+
+    // 参数为超时秒数和同一超时时间的一批key-value
+    private final BiConsumer<Long, Map<String, V>> flusher;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    // 入队及删除的序号
+    private final AtomicLong sequence = new AtomicLong();
+
+    // key最近一次删除的序号, 队列为空时清理
+    private final ConcurrentMap<String, Long> invalidations = new ConcurrentHashMap<>();
+
+    // 已取得序号但尚未完成入队的元素个数
+    private final AtomicInteger offering = new AtomicInteger();
+
+    /**
+     * @param capacity           队列容量
+     * @param batchSize          单次批量写入的最大元素个数
+     * @param offerTimeoutMillis 队列满时入队的最长等待时间, 单位:毫秒, 0为不等待直接丢弃
+     * @param flusher            批量写入函数, 参数为超时秒数和同一超时时间的一批key-value
+     */
+    public WriteBehindQueue(int capacity, int batchSize, long offerTimeoutMillis,
+                            BiConsumer<Long, Map<String, V>> flusher) {
+        Validate.isTrue(capacity > 0, "capacity must > 0");
+        Validate.isTrue(batchSize > 0, "batchSize must > 0");
+        Validate.notNull(flusher, "flusher is null");
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.flusher = flusher;
+        this.worker = new Thread(this::run, "cache-write-behind");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 写入队列, 队列满且等待超时后丢弃
+     * @return 是否入队成功
+     */
+    public boolean offer(String key, long seconds, V value) {
+        // 先计数再取序号, 后台线程据此判断序号更小的元素是否都已入队
+        offering.incrementAndGet();
+        boolean offered;
+        try {
+            Entry<V> entry = new Entry<>(key, seconds, value, sequence.incrementAndGet());
+            offered = offerTimeoutMillis > 0
+                    ? queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS)
+                    : queue.offer(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            offered = false;
+        } finally {
+            offering.decrementAndGet();
+        }
+        if (offered) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+        return offered;
+    }
+
+    /**
+     * 删除缓存前调用, 之前入队尚未写入的该key的值不再写入
+     */
+    public void invalidate(String key) {
+        invalidations.merge(key, sequence.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * 停止后台线程, 并写完队列中剩余的元素. 后台线程5秒内未写完当前批次时中断
+     */
+    public void close() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+            if (worker.isAlive()) {
+                worker.interrupt();
+                worker.join(TimeUnit.SECONDS.toMillis(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Entry<V>> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 队列中待写入的元素个数
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * 因队列满丢弃的元素个数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * 写入缓存出错的元素个数
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * 入队后被删除因而未写入的元素个数
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    private void run() {
+        List<Entry<V>> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                long upTo = sequence.get();
+                Entry<V> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    flush(batch);
+                }
+                // 先确认没有正在入队的元素, 再确认队列为空, 此时序号不大于upTo的元素均已写入, 不再需要之前的删除记录
+                if (!invalidations.isEmpty() && offering.get() == 0 && queue.isEmpty()) {
+                    invalidations.values().removeIf(seq -> seq <= upTo);
+                }
+            } catch (InterruptedException e) {
+                // close()时中断, 由running控制退出
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Entry<V>> batch) {
+        // 按超时时间分组, 同一key保留最后一次写入
+        Map<Long, Map<String, V>> groups = new LinkedHashMap<>();
+        for (Entry<V> entry : batch) {
+            Long invalidated = invalidations.get(entry.key);
+            if (invalidated != null && invalidated > entry.sequence) {
+                skipped.increment();
+                continue;
+            }
+            groups.computeIfAbsent(entry.seconds, k -> new LinkedHashMap<>()).put(entry.key, entry.value);
+        }
+        for (Map.Entry<Long, Map<String, V>> group : groups.entrySet()) {
+            int size = group.getValue().size();
+            try {
+                flusher.accept(group.getKey(), group.getValue());
+                written.add(size);
+            } catch (Throwable t) {
+                failed.add(size);
+                log.warn("批量写入缓存出错", t);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        final String key;
+        final long seconds;
+        final V value;
+        final long sequence;
+
+        Entry(String key, long seconds, V value, long sequence) {
+            this.key = key;
+            this.seconds = seconds;
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
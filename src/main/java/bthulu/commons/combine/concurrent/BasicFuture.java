@@ -19,133 +19,345 @@
 package bthulu.commons.combine.concurrent;
 
 import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 /**
  * 从Apache HttpClient 移植(2017.4)，一个Future实现类的基本框架.
  *
  * https://github.com/apache/httpcomponents-core/blob/master/httpcore5/src/main/java/org/apache/hc/core5/concurrent/BasicFuture.java
  *
- * 不过HC用的是callback，这里用的是继承
+ * 不过HC用的是callback，这里用的是继承, 也可通过{@link #addListener(BiConsumer)}注册回调.
+ *
+ * 状态以CAS转换, 等待结果的线程以{@link LockSupport}挂起, 不再同步于this, 多个线程等待同一结果时不会互相阻塞.
+ * 可通过{@link #toCompletableFuture()}及{@link #from(CompletionStage)}与CompletableFuture互相转换.
  */
-public abstract class BasicFuture<T> implements Future<T> {
+public class BasicFuture<T> implements Future<T> {
+
+	private static Logger logger = LoggerFactory.getLogger(BasicFuture.class);
+
+	private static final int PENDING = 0;
+
+	// 已抢到完成权, 正在写入结果
+	private static final int COMPLETING = 1;
+
+	private static final int COMPLETED = 2;
+
+	private static final int FAILED = 3;
+
+	private static final int CANCELLED = 4;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<BasicFuture> STATE = AtomicIntegerFieldUpdater
+			.newUpdater(BasicFuture.class, "state");
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<BasicFuture, Node> WAITERS = AtomicReferenceFieldUpdater
+			.newUpdater(BasicFuture.class, Node.class, "waiters");
 
-	private volatile boolean completed; // NOSONAR
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<BasicFuture, Node> LISTENERS = AtomicReferenceFieldUpdater
+			.newUpdater(BasicFuture.class, Node.class, "listeners");
 
-	private volatile boolean cancelled;
+	// 完成后替换等待栈及回调栈, 之后不再入栈
+	private static final Node DONE = new Node(null, null);
 
-	private volatile T result;
+	private volatile int state; // NOSONAR
 
-	private volatile Exception ex;
+	// 结果或异常(由CompletionStage转换时可能为Error), 在state由COMPLETING转为最终状态前写入
+	private Object outcome;
+
+	// 等待结果的线程, Treiber栈
+	private volatile Node waiters;
+
+	// 完成时的回调, Treiber栈
+	private volatile Node listeners;
+
+	public BasicFuture() {
+	}
 
 	@Override
 	public boolean isCancelled() {
-		return this.cancelled;
+		return this.state == CANCELLED;
 	}
 
 	@Override
 	public boolean isDone() {
-		return this.completed;
+		return this.state > COMPLETING;
 	}
 
 	@Override
-	public synchronized T get() throws InterruptedException, ExecutionException {
-		while (!this.completed) {
-			wait();
+	public T get() throws InterruptedException, ExecutionException {
+		int s = this.state;
+		if (s <= COMPLETING) {
+			s = awaitDone(false, 0);
 		}
-		return getResult();
+		return getResult(s);
 	}
 
 	@Override
-	public synchronized T get(final long timeout, final TimeUnit unit)
+	public T get(final long timeout, final TimeUnit unit)
 			throws InterruptedException, ExecutionException, TimeoutException {
 		Validate.notNull(unit, "Time unit");
-		final long msecs = unit.toMillis(timeout);
-		final long startTime = (msecs <= 0) ? 0 : System.currentTimeMillis();
-		long waitTime = msecs;
-		if (this.completed) {
-			return getResult();
-		}
-		else if (waitTime <= 0) {
-			throw new TimeoutException();
-		}
-		else {
-			for (;;) {
-				wait(waitTime);
-				if (this.completed) {
-					return getResult();
-				}
-				else {
-					waitTime = msecs - (System.currentTimeMillis() - startTime);
-					if (waitTime <= 0) {
-						throw new TimeoutException();
-					}
-				}
+		int s = this.state;
+		if (s <= COMPLETING) {
+			s = awaitDone(true, unit.toNanos(timeout));
+			if (s <= COMPLETING) {
+				throw new TimeoutException();
 			}
 		}
+		return getResult(s);
 	}
 
-	private T getResult() throws ExecutionException {
-		if (this.ex != null) {
-			throw new ExecutionException(this.ex);
+	@SuppressWarnings("unchecked")
+	private T getResult(int s) throws ExecutionException {
+		if (s == FAILED) {
+			throw new ExecutionException((Throwable) this.outcome);
 		}
-
-		if (cancelled) {
+		if (s == CANCELLED) {
 			throw new CancellationException();
 		}
-		return this.result;
+		return (T) this.outcome;
 	}
 
 	public boolean completed(final T result) {
-		synchronized (this) {
-			if (this.completed) {
-				return false;
-			}
-			this.completed = true;
-			this.result = result;
-			notifyAll();
+		if (!finish(result, COMPLETED)) {
+			return false;
 		}
 		onCompleted(result);
-
+		fireListeners();
 		return true;
 	}
 
 	public boolean failed(final Exception exception) {
-		synchronized (this) {
-			if (this.completed) {
-				return false;
-			}
-			this.completed = true;
-			this.ex = exception;
-			notifyAll();
-		}
-
-		onFailed(exception);
+		return failedWith(exception);
+	}
 
+	// Error不包装, get()时直接作为ExecutionException的cause, 只有Exception回调onFailed
+	private boolean failedWith(Throwable t) {
+		if (!finish(t, FAILED)) {
+			return false;
+		}
+		if (t instanceof Exception) {
+			onFailed((Exception) t);
+		}
+		fireListeners();
 		return true;
 	}
 
 	@Override
 	public boolean cancel(final boolean mayInterruptIfRunning) {
-		synchronized (this) {
-			if (this.completed) {
-				return false;
+		if (!finish(null, CANCELLED)) {
+			return false;
+		}
+		onCancelled();
+		fireListeners();
+		return true;
+	}
+
+	/**
+	 * 注册完成时的回调, 成功时异常参数为null, 失败时为失败的异常, 取消时为{@link CancellationException}.
+	 * 已完成时在当前线程立即执行, 否则在完成的线程中执行, 回调抛出的异常仅打印日志
+	 */
+	public BasicFuture<T> addListener(BiConsumer<? super T, ? super Throwable> listener) {
+		Validate.notNull(listener, "listener");
+		Node node = new Node(null, listener);
+		for (;;) {
+			Node head = this.listeners;
+			if (head == DONE) {
+				notifyListener(listener);
+				return this;
+			}
+			node.next = head;
+			if (LISTENERS.compareAndSet(this, head, node)) {
+				return this;
 			}
-			this.completed = true;
-			this.cancelled = true;
-			notifyAll();
 		}
+	}
 
-		onCancelled();
+	/**
+	 * 转换为CompletableFuture, 本Future完成时随之完成. 取消返回的CompletableFuture时同时取消本Future
+	 */
+	public CompletableFuture<T> toCompletableFuture() {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		addListener((result, t) -> {
+			if (t == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(t);
+			}
+		});
+		future.whenComplete((result, t) -> {
+			if (t instanceof CancellationException) {
+				cancel(false);
+			}
+		});
+		return future;
+	}
 
+	/**
+	 * 由CompletionStage转换, 随其完成, 失败或取消
+	 */
+	public static <T> BasicFuture<T> from(CompletionStage<T> stage) {
+		BasicFuture<T> future = new BasicFuture<>();
+		stage.whenComplete((result, t) -> {
+			if (t instanceof CompletionException && t.getCause() != null) {
+				t = t.getCause();
+			}
+			if (t == null) {
+				future.completed(result);
+			} else if (t instanceof CancellationException) {
+				future.cancel(false);
+			} else {
+				future.failedWith(t);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * 完成时的扩展点, 在唤醒等待线程之后, 执行回调之前调用
+	 */
+	protected void onCompleted(T result) {
+	}
+
+	protected void onFailed(Exception ex) {
+	}
+
+	protected void onCancelled() {
+	}
+
+	// 抢占完成权并写入结果, 唤醒全部等待线程
+	private boolean finish(Object outcome, int finalState) {
+		if (!STATE.compareAndSet(this, PENDING, COMPLETING)) {
+			return false;
+		}
+		this.outcome = outcome;
+		STATE.lazySet(this, finalState);
+		for (Node node = WAITERS.getAndSet(this, DONE); node != null; node = node.next) {
+			Thread thread = node.thread;
+			if (thread != null) {
+				node.thread = null;
+				LockSupport.unpark(thread);
+			}
+		}
 		return true;
 	}
 
-	protected abstract void onCompleted(T result);
+	// 按注册顺序执行回调
+	@SuppressWarnings("unchecked")
+	private void fireListeners() {
+		Node reversed = null;
+		for (Node node = LISTENERS.getAndSet(this, DONE); node != null; ) {
+			Node next = node.next;
+			node.next = reversed;
+			reversed = node;
+			node = next;
+		}
+		for (Node node = reversed; node != null; node = node.next) {
+			notifyListener((BiConsumer<? super T, ? super Throwable>) node.listener);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void notifyListener(BiConsumer<? super T, ? super Throwable> listener) {
+		int s = this.state;
+		try {
+			if (s == COMPLETED) {
+				listener.accept((T) this.outcome, null);
+			} else if (s == FAILED) {
+				listener.accept(null, (Throwable) this.outcome);
+			} else {
+				listener.accept(null, new CancellationException());
+			}
+		} catch (Throwable t) {
+			logger.warn("Future回调出错", t);
+		}
+	}
+
+	// 挂起直到完成, 中断或超时, 返回当时的状态
+	private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+		final long deadline = timed ? System.nanoTime() + nanos : 0L;
+		Node node = null;
+		boolean queued = false;
+		for (;;) {
+			int s = this.state;
+			if (s > COMPLETING) {
+				if (node != null) {
+					node.thread = null;
+				}
+				return s;
+			} else if (s == COMPLETING) {
+				// 结果即将写入, 无需挂起
+				Thread.yield();
+			} else if (Thread.interrupted()) {
+				removeWaiter(node);
+				throw new InterruptedException();
+			} else if (node == null) {
+				if (timed && nanos <= 0L) {
+					return s;
+				}
+				node = new Node(Thread.currentThread(), null);
+			} else if (!queued) {
+				Node head = this.waiters;
+				if (head == DONE) {
+					// 已完成, 下一轮循环读取最终状态
+					continue;
+				}
+				node.next = head;
+				queued = WAITERS.compareAndSet(this, head, node);
+			} else if (timed) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0L) {
+					removeWaiter(node);
+					return this.state;
+				}
+				LockSupport.parkNanos(this, remaining);
+			} else {
+				LockSupport.park(this);
+			}
+		}
+	}
 
-	protected abstract void onFailed(Exception ex);
+	// 超时或中断后将节点移出等待栈, 避免长期未完成时节点堆积
+	private void removeWaiter(Node node) {
+		if (node == null) {
+			return;
+		}
+		node.thread = null;
+		retry:
+		for (;;) {
+			for (Node pred = null, q = this.waiters, next; q != null && q != DONE; q = next) {
+				next = q.next;
+				if (q.thread != null) {
+					pred = q;
+				} else if (pred != null) {
+					pred.next = next;
+					if (pred.thread == null) {
+						continue retry;
+					}
+				} else if (!WAITERS.compareAndSet(this, q, next)) {
+					continue retry;
+				}
+			}
+			break;
+		}
+	}
 
-	protected abstract void onCancelled();
+	private static final class Node {
+		volatile Thread thread;
+		final BiConsumer<?, ? super Throwable> listener;
+		volatile Node next;
 
+		Node(Thread thread, BiConsumer<?, ? super Throwable> listener) {
+			this.thread = thread;
+			this.listener = listener;
+		}
+	}
 }
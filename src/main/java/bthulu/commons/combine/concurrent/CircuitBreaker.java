@@ -0,0 +1,155 @@
+package bthulu.commons.combine.concurrent;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器.
+ *
+ * 1. 关闭状态下连续失败failureThreshold次后打开, 打开状态下拒绝全部请求
+ *
+ * 2. 打开openMillis毫秒后进入半开状态, 只放行一个探测请求, 成功则关闭, 失败则重新打开.
+ * 探测请求超过openMillis毫秒仍未返回结果时, 再放行一个探测请求
+ *
+ * 3. 记录各状态的转换次数及被拒绝的请求数
+ */
+public class CircuitBreaker {
+
+	private static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+	// 最近一次状态转换或放行探测请求的时间
+	private final AtomicLong changedAt = new AtomicLong(System.currentTimeMillis());
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	private final LongAdder opened = new LongAdder();
+
+	private final LongAdder halfOpened = new LongAdder();
+
+	private final LongAdder closed = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param name 名称, 用于日志
+	 * @param failureThreshold 连续失败多少次后打开
+	 * @param openMillis 打开后多少毫秒进入半开状态
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+		Validate.isTrue(failureThreshold > 0, "failureThreshold must > 0");
+		Validate.isTrue(openMillis > 0, "openMillis must > 0");
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * 是否放行请求, 放行后须调用{@link #onSuccess()}或{@link #onFailure()}报告结果
+	 */
+	public boolean allowRequest() {
+		State current = state.get();
+		if (current == State.CLOSED) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		long last = changedAt.get();
+		// 打开超时或上一个探测请求未返回结果, 只有一个线程能更新时间并作为探测请求
+		if (now - last >= openMillis && changedAt.compareAndSet(last, now)) {
+			if (current == State.OPEN && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+				halfOpened.increment();
+				logger.info("熔断器{}半开, 放行探测请求", name);
+			}
+			return true;
+		}
+		rejected.increment();
+		return false;
+	}
+
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		if (state.get() != State.CLOSED && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+			changedAt.set(System.currentTimeMillis());
+			closed.increment();
+			logger.info("熔断器{}关闭", name);
+		}
+	}
+
+	public void onFailure() {
+		State current = state.get();
+		if (current == State.HALF_OPEN) {
+			open(State.HALF_OPEN);
+		} else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			open(State.CLOSED);
+		}
+	}
+
+	private void open(State expect) {
+		// 先更新时间, 避免其他线程以打开前的时间判定打开超时
+		changedAt.set(System.currentTimeMillis());
+		if (state.compareAndSet(expect, State.OPEN)) {
+			consecutiveFailures.set(0);
+			opened.increment();
+			logger.warn("熔断器{}打开, {}毫秒内拒绝请求", name, openMillis);
+		}
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 转换为打开状态的次数
+	 */
+	public long getOpenedCount() {
+		return opened.sum();
+	}
+
+	/**
+	 * 转换为半开状态的次数
+	 */
+	public long getHalfOpenedCount() {
+		return halfOpened.sum();
+	}
+
+	/**
+	 * 由半开转换为关闭状态的次数
+	 */
+	public long getClosedCount() {
+		return closed.sum();
+	}
+
+	/**
+	 * 被拒绝的请求数
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return name + "{state=" + state.get() + ", opened=" + getOpenedCount() + ", halfOpened=" + getHalfOpenedCount()
+				+ ", closed=" + getClosedCount() + ", rejected=" + getRejectedCount() + "}";
+	}
+}
@@ -0,0 +1,246 @@
+package bthulu.commons.combine.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的线程池, 由{@link ThreadPoolBuilder}创建.
+ *
+ * 1. 记录任务在队列中的等待时间及执行时间({@link LatencyHistogram}), 完成, 出错, 被拒绝及由提交线程执行的任务数({@link LongAdder})
+ *
+ * 2. 队列中的任务数达到阈值时, 通过{@link ThreadDumpper#hotThreadsIfNeed(String)}在后台打印繁忙的线程.
+ * 有界队列的size()须加锁, 故提交任务时按1/16的概率抽样检查, 任务被拒绝时必定检查
+ *
+ * 3. {@link #shutdownGracefully(long)}先等待已提交的任务完成, 超时后再中断
+ *
+ * 任务在队列中以记录提交时间的包装类保存, {@link #remove(Runnable)}, {@link #shutdownNow()}及拒绝策略中仍为提交的原任务
+ */
+public class InstrumentedThreadPool extends ThreadPoolExecutor {
+
+	private static Logger logger = LoggerFactory.getLogger(InstrumentedThreadPool.class);
+
+	// 提交任务时检查队列长度的抽样间隔
+	private static final int SATURATION_SAMPLE = 16;
+
+	private final String name;
+
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+
+	private final LatencyHistogram executeLatency = new LatencyHistogram();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder callerRuns = new LongAdder();
+
+	// 开始执行的时间, 由执行线程写入, 用于计算执行时间
+	private final ThreadLocal<Long> startedAt = new ThreadLocal<>();
+
+	private final ThreadDumpper threadDumpper;
+
+	private final int saturationThreshold;
+
+	InstrumentedThreadPool(String name, int coreSize, int maxSize, long keepAliveMillis,
+			BlockingQueue<Runnable> queue, ThreadFactory threadFactory, RejectedExecutionHandler handler,
+			ThreadDumpper threadDumpper, int saturationThreshold) {
+		super(coreSize, maxSize, keepAliveMillis, TimeUnit.MILLISECONDS, queue, threadFactory, handler);
+		this.name = name;
+		this.threadDumpper = threadDumpper;
+		this.saturationThreshold = saturationThreshold;
+		// 先计数再交给原拒绝策略, CallerRunsPolicy在线程池未关闭时由提交线程执行, 不计为拒绝
+		boolean callerRunsPolicy = handler instanceof CallerRunsPolicy;
+		setRejectedExecutionHandler((r, executor) -> {
+			if (callerRunsPolicy && !executor.isShutdown()) {
+				callerRuns.increment();
+			} else {
+				rejected.increment();
+			}
+			onSaturated();
+			handler.rejectedExecution(unwrap(r), executor);
+		});
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new TimedTask(command));
+		if (threadDumpper != null && ThreadLocalRandom.current().nextInt(SATURATION_SAMPLE) == 0
+				&& getQueue().size() >= saturationThreshold) {
+			onSaturated();
+		}
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		long now = System.nanoTime();
+		if (r instanceof TimedTask) {
+			queueLatency.record(now - ((TimedTask) r).submittedAt);
+		}
+		startedAt.set(now);
+		super.beforeExecute(t, r);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		Long start = startedAt.get();
+		if (start != null) {
+			executeLatency.record(System.nanoTime() - start);
+			startedAt.remove();
+		}
+		if (t == null) {
+			completed.increment();
+		} else {
+			failed.increment();
+		}
+	}
+
+	@Override
+	public boolean remove(Runnable task) {
+		for (Runnable queued : getQueue()) {
+			if (queued == task || (queued instanceof TimedTask && ((TimedTask) queued).task == task)) {
+				return super.remove(queued);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 返回队列中未执行的原任务
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> tasks = super.shutdownNow();
+		List<Runnable> unwrapped = new ArrayList<>(tasks.size());
+		for (Runnable task : tasks) {
+			unwrapped.add(unwrap(task));
+		}
+		return unwrapped;
+	}
+
+	/**
+	 * 停止接收新任务, 等待已提交的任务完成, 超过timeoutMillis毫秒后中断正在执行的任务并丢弃队列中的任务
+	 * @return 是否在超时前全部完成
+	 */
+	public boolean shutdownGracefully(long timeoutMillis) {
+		shutdown();
+		try {
+			if (awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			int dropped = shutdownNow().size();
+			logger.warn("线程池{}关闭超时, 中断执行中的任务, 丢弃队列中的{}个任务", name, dropped);
+			awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 任务在队列中的等待时间
+	 */
+	public LatencyHistogram.Snapshot getQueueLatency() {
+		return queueLatency.snapshot();
+	}
+
+	/**
+	 * 任务的执行时间
+	 */
+	public LatencyHistogram.Snapshot getExecuteLatency() {
+		return executeLatency.snapshot();
+	}
+
+	/**
+	 * 正常完成的任务数. submit()提交的任务出错时由Future返回异常, 仍计为完成
+	 */
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+
+	/**
+	 * 抛出异常的任务数
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * 被拒绝的任务数, 不含CallerRunsPolicy由提交线程执行的任务
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * 线程池已满时由CallerRunsPolicy在提交线程中执行的任务数
+	 */
+	public long getCallerRunsCount() {
+		return callerRuns.sum();
+	}
+
+	/**
+	 * 队列中等待的任务数
+	 */
+	public int getQueuedCount() {
+		return getQueue().size();
+	}
+
+	private static Runnable unwrap(Runnable r) {
+		return r instanceof TimedTask ? ((TimedTask) r).task : r;
+	}
+
+	private void onSaturated() {
+		if (threadDumpper != null) {
+			threadDumpper.hotThreadsIfNeed("thread pool " + name + " saturated");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "{active=" + getActiveCount() + ", pool=" + getPoolSize() + ", queued=" + getQueuedCount()
+				+ ", completed=" + getCompletedCount() + ", failed=" + getFailedCount() + ", rejected="
+				+ getRejectedCount() + ", callerRuns=" + getCallerRunsCount() + ", queue={" + getQueueLatency()
+				+ "}, execute={" + getExecuteLatency() + "}}";
+	}
+
+	/**
+	 * 记录提交时间的任务
+	 */
+	private static final class TimedTask implements Runnable {
+		final Runnable task;
+		final long submittedAt = System.nanoTime();
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+}
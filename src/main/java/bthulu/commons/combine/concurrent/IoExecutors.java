@@ -0,0 +1,39 @@
+package bthulu.commons.combine.concurrent;
+
+import bthulu.commons.combine.RuntimeUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 执行阻塞IO任务的线程池.
+ *
+ * 以多版本JAR发布: Java 21及以上使用src/main/java21中的实现, 每个任务一个虚拟线程, 无需估算线程数;
+ * Java 8-20使用本实现, 为不排队的弹性线程池, 空闲60秒的线程被回收, 线程数达到上限后由提交任务的线程执行.
+ *
+ * 任务中应使用{@link ThreadUtil#sleep(long)}, {@link BasicFuture#get()}等基于Thread.sleep及LockSupport的阻塞方式,
+ * 在虚拟线程中避免在synchronized块内阻塞, 否则会占住承载线程.
+ */
+public class IoExecutors {
+
+	// 弹性线程池的最大线程数
+	private static final int MAX_THREADS = Math.max(64, RuntimeUtil.getCores() * 32);
+
+	private IoExecutors() {
+	}
+
+	/**
+	 * 创建执行阻塞IO任务的线程池, 线程名为<code>name-序号</code>
+	 */
+	public static ExecutorService newIoExecutor(String name) {
+		return ThreadPoolBuilder.named(name).coreSize(0).maxSize(MAX_THREADS).queueSize(0).keepAlive(60_000)
+				.rejectHandler(new ThreadPoolExecutor.CallerRunsPolicy()).build();
+	}
+
+	/**
+	 * {@link #newIoExecutor(String)}创建的线程池是否以虚拟线程执行任务, 由运行时加载的实现决定, 与调用线程无关
+	 */
+	public static boolean usesVirtualThreads() {
+		return false;
+	}
+}
@@ -0,0 +1,126 @@
+package bthulu.commons.combine.concurrent;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 低开销的并发耗时直方图.
+ *
+ * 以微秒为单位按2的幂次分桶(第i个桶为[2^(i-1), 2^i)微秒), 每个桶为一个{@link LongAdder}, 多线程记录时无锁竞争.
+ * 分位数按桶的上界估算, 误差在2倍以内, 适合监控而非精确统计.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * 记录一次耗时, 单位为纳秒
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		long micros = nanos / 1000;
+		int index = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets[index].increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * 当前的统计快照, 非原子快照, 并发记录时各项之间可能有少量偏差
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		return new Snapshot(counts, count, sum.sum(), max.get());
+	}
+
+	/**
+	 * 清空统计
+	 */
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		sum.reset();
+		max.reset();
+	}
+
+	public static class Snapshot {
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long sumNanos;
+
+		private final long maxNanos;
+
+		Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+			this.counts = counts;
+			this.count = count;
+			this.sumNanos = sumNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * 平均耗时, 单位:纳秒
+		 */
+		public long getMeanNanos() {
+			return count == 0 ? 0 : sumNanos / count;
+		}
+
+		/**
+		 * 最大耗时, 单位:纳秒
+		 */
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * 估算的分位耗时, 单位:纳秒
+		 * @param quantile 分位数, 在0-1之间, 如0.99
+		 */
+		public long getQuantileNanos(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long threshold = (long) Math.ceil(count * quantile);
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				if (cumulative >= threshold) {
+					return Math.min(maxNanos, (1L << i) * 1000);
+				}
+			}
+			return maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + getMeanNanos() / 1000 + "us, p50=" + getQuantileNanos(0.5) / 1000
+					+ "us, p99=" + getQuantileNanos(0.99) / 1000 + "us, max=" + maxNanos / 1000 + "us";
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package bthulu.commons.combine.concurrent;
+
+import java.lang.annotation.*;
+
+/**
+ * 方法限流, 由{@link RateLimitAdvice}处理. 许可不足时抛出异常, 见{@link RateLimitAdvice#onRejected}
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface RateLimit {
+
+	/**
+	 * 限流器名称, 同名的方法共用一个限流器, 以首个调用的方法的配置为准. 默认为方法签名, 即每个方法单独限流
+	 */
+	String value() default "";
+
+	/**
+	 * 每秒许可数, 滑动窗口时窗口内的最大许可数为permitsPerSecond * windowMillis / 1000, 至少为1
+	 */
+	double permitsPerSecond();
+
+	/**
+	 * 限流算法, 默认令牌桶
+	 */
+	Type type() default Type.TOKEN_BUCKET;
+
+	/**
+	 * 令牌桶的预热时间, 单位:毫秒, 默认0不预热
+	 */
+	long warmupMillis() default 0;
+
+	/**
+	 * 滑动窗口的窗口长度, 单位:毫秒, 默认1秒
+	 */
+	long windowMillis() default 1000;
+
+	/**
+	 * 许可不足时的最长等待时间, 单位:毫秒, 默认0不等待
+	 */
+	long timeoutMillis() default 0;
+
+	enum Type {
+		/**
+		 * {@link TokenBucketRateLimiter}
+		 */
+		TOKEN_BUCKET,
+		/**
+		 * {@link SlidingWindowRateLimiter}
+		 */
+		SLIDING_WINDOW
+	}
+}
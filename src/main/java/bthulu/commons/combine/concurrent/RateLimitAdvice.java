@@ -0,0 +1,112 @@
+package bthulu.commons.combine.concurrent;
+
+import bthulu.commons.combine.exception.BusinessException;
+import org.apache.commons.lang3.Validate;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimit}注解的切面, 注册为spring bean即可生效.
+ *
+ * 1. 限流器按名称创建并缓存, 也可通过{@link #register(String, RateLimiter)}预先注册自定义的限流器, 覆盖注解的配置
+ *
+ * 2. 许可不足时调用{@link #onRejected}, 默认抛出不带调用栈的{@link BusinessException}, 子类可覆盖以返回降级结果
+ */
+@Aspect
+public class RateLimitAdvice {
+
+	private static Logger logger = LoggerFactory.getLogger(RateLimitAdvice.class);
+
+	@Pointcut("@annotation(bthulu.commons.combine.concurrent.RateLimit)")
+	public void rateLimitCut() {
+	}
+
+	private final ConcurrentMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Method, LimitOperation> operations = new ConcurrentHashMap<>();
+
+	@Around("rateLimitCut()")
+	public Object doLimit(ProceedingJoinPoint joinPoint) throws Throwable {
+		LimitOperation operation = getOperation((MethodSignature) joinPoint.getSignature());
+		if (!operation.limiter.tryAcquire(1, operation.timeoutMillis, TimeUnit.MILLISECONDS)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("限流器{}许可不足, 拒绝调用", operation.name);
+			}
+			return onRejected(joinPoint, operation.name);
+		}
+		return joinPoint.proceed();
+	}
+
+	/**
+	 * 许可不足时调用, 返回值作为方法的返回值
+	 * @param name 限流器名称
+	 */
+	protected Object onRejected(ProceedingJoinPoint joinPoint, String name) throws Throwable {
+		throw new BusinessException("请求过于频繁:" + name, false);
+	}
+
+	/**
+	 * 注册限流器, 对名称为name的{@link RateLimit}生效, 须在方法首次调用前注册
+	 */
+	public void register(String name, RateLimiter limiter) {
+		Validate.notBlank(name, "name is blank");
+		Validate.notNull(limiter, "limiter is null");
+		limiters.put(name, limiter);
+	}
+
+	/**
+	 * 已创建或注册的限流器, 用于查看拒绝次数等统计
+	 */
+	public Map<String, RateLimiter> getLimiters() {
+		return Collections.unmodifiableMap(limiters);
+	}
+
+	private LimitOperation getOperation(MethodSignature signature) {
+		Method method = signature.getMethod();
+		LimitOperation operation = operations.get(method);
+		if (operation == null) {
+			RateLimit rateLimit = method.getAnnotation(RateLimit.class);
+			String name = rateLimit.value().isEmpty() ? signature.toLongString() : rateLimit.value();
+			RateLimiter limiter = limiters.computeIfAbsent(name, k -> createLimiter(rateLimit));
+			operation = new LimitOperation(name, limiter, rateLimit.timeoutMillis());
+			LimitOperation exists = operations.putIfAbsent(method, operation);
+			if (exists != null) {
+				operation = exists;
+			}
+		}
+		return operation;
+	}
+
+	private static RateLimiter createLimiter(RateLimit rateLimit) {
+		if (rateLimit.type() == RateLimit.Type.SLIDING_WINDOW) {
+			long windowMillis = rateLimit.windowMillis();
+			int maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, rateLimit.permitsPerSecond() * windowMillis / 1000));
+			return new SlidingWindowRateLimiter(maxPermits, windowMillis, (int) Math.min(10, windowMillis));
+		}
+		return new TokenBucketRateLimiter(rateLimit.permitsPerSecond(), rateLimit.warmupMillis());
+	}
+
+	private static final class LimitOperation {
+		final String name;
+		final RateLimiter limiter;
+		final long timeoutMillis;
+
+		LimitOperation(String name, RateLimiter limiter, long timeoutMillis) {
+			this.name = name;
+			this.limiter = limiter;
+			this.timeoutMillis = timeoutMillis;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package bthulu.commons.combine.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流器, 实现须线程安全.
+ *
+ * 1. {@link TokenBucketRateLimiter} 令牌桶, 按固定速率发放许可, 允许一定的突发, 可设置预热期
+ *
+ * 2. {@link SlidingWindowRateLimiter} 滑动窗口计数, 限制任意窗口内的许可总数
+ *
+ * 也可通过{@link RateLimit}注解及{@link RateLimitAdvice}声明式地限流
+ */
+public interface RateLimiter {
+
+	/**
+	 * 获取一个许可, 不等待
+	 */
+	default boolean tryAcquire() {
+		return tryAcquire(1);
+	}
+
+	/**
+	 * 获取permits个许可, 不等待
+	 */
+	default boolean tryAcquire(int permits) {
+		return tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 获取permits个许可, 最多等待timeout, 等待期间不响应中断, 返回前恢复线程的中断状态
+	 * @return 是否在超时前获取到许可, 超时时间内不可能获取到时立即返回false
+	 */
+	boolean tryAcquire(int permits, long timeout, TimeUnit unit);
+
+	/**
+	 * 因许可不足被拒绝的次数
+	 */
+	long getRejectedCount();
+}
@@ -1,8 +1,13 @@
 package bthulu.commons.combine.concurrent;
 
+import bthulu.commons.combine.hash.MurmurHash3;
 import org.apache.commons.lang3.Validate;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 采样器
@@ -11,6 +16,8 @@ import java.util.concurrent.ThreadLocalRandom;
  *
  * https://github.com/twitter/commons/blob/master/src/java/com/twitter/common/util/Sampler.java
  *
+ * 除固定采样率外, 还可按每秒最大采样数({@link #createRateLimited(int)}), 按目标采样速率自动调整采样率
+ * ({@link #createAdaptive(double, long)}), 按trace id确定性地采样({@link #createHashBased(double)}).
  */
 public class Sampler {
 
@@ -48,6 +55,27 @@ public class Sampler {
 		}
 	}
 
+	/**
+	 * 每秒最多采样maxPerSecond次, 流量突增时采样数不随之增长
+	 */
+	public static Sampler createRateLimited(int maxPerSecond) {
+		return new RateLimitedSampler(maxPerSecond);
+	}
+
+	/**
+	 * 每隔adjustMillis毫秒按观测到的请求速率调整采样率, 使每秒采样数趋近targetPerSecond
+	 */
+	public static AdaptiveSampler createAdaptive(double targetPerSecond, long adjustMillis) {
+		return new AdaptiveSampler(targetPerSecond, adjustMillis);
+	}
+
+	/**
+	 * 按trace id的散列值采样, 同一id的结果总是相同, 各服务使用相同的采样率时对同一请求的判定一致
+	 */
+	public static HashSampler createHashBased(double selectPercent) {
+		return new HashSampler(selectPercent);
+	}
+
 	/**
 	 * 判断当前请求是否命中采样
 	 */
@@ -79,4 +107,137 @@ public class Sampler {
 
 	}
 
+	/**
+	 * 限速采样器. 每秒分为10个时间片, 第i个时间片结束前最多累计采样maxPerSecond*(i+1)/10次, 避免采样集中在每秒开头.
+	 * 秒序号及当秒的采样数保存在一个AtomicLong中, 以CAS更新, 无锁
+	 */
+	protected static class RateLimitedSampler extends Sampler {
+
+		private static final int SLICES = 10;
+
+		private static final long SLICE_NANOS = TimeUnit.SECONDS.toNanos(1) / SLICES;
+
+		private final int maxPerSecond;
+
+		private final long baseNanos = System.nanoTime();
+
+		// 高32位为秒序号, 低32位为该秒已采样数
+		private final AtomicLong state = new AtomicLong();
+
+		protected RateLimitedSampler(int maxPerSecond) {
+			Validate.isTrue(maxPerSecond > 0, "maxPerSecond must > 0");
+			this.maxPerSecond = maxPerSecond;
+		}
+
+		@Override
+		public boolean select() {
+			long elapsed = System.nanoTime() - baseNanos;
+			long second = elapsed / (SLICE_NANOS * SLICES);
+			int slice = (int) (elapsed / SLICE_NANOS % SLICES);
+			long limit = (long) maxPerSecond * (slice + 1) / SLICES;
+			for (;;) {
+				long current = state.get();
+				long currentSecond = current >>> 32;
+				if (currentSecond > second) {
+					// 其他线程已进入下一秒, 本次按该秒计数
+					second = currentSecond;
+					limit = maxPerSecond;
+				}
+				long count = currentSecond == second ? current & 0xFFFFFFFFL : 0;
+				if (count >= limit) {
+					return false;
+				}
+				if (state.compareAndSet(current, (second << 32) | (count + 1))) {
+					return true;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * 自适应采样器. 按请求速率的指数移动平均计算采样率, 即targetPerSecond / 请求速率, 不超过1.
+	 * 到达调整时间时由一个线程以CAS抢到调整权, 其余线程继续使用当前采样率
+	 */
+	public static class AdaptiveSampler extends Sampler {
+
+		// 请求速率的平滑系数
+		private static final double ALPHA = 0.5;
+
+		private final double targetPerSecond;
+
+		private final long adjustNanos;
+
+		private final LongAdder events = new LongAdder();
+
+		private final AtomicLong nextAdjustAt;
+
+		private volatile double probability = 1;
+
+		// 请求速率的移动平均, 由抢到调整权的线程更新, 各次调整可能由不同线程执行
+		private volatile double eventRate = -1;
+
+		protected AdaptiveSampler(double targetPerSecond, long adjustMillis) {
+			Validate.isTrue(targetPerSecond > 0, "targetPerSecond must > 0");
+			Validate.isTrue(adjustMillis > 0, "adjustMillis must > 0");
+			this.targetPerSecond = targetPerSecond;
+			this.adjustNanos = TimeUnit.MILLISECONDS.toNanos(adjustMillis);
+			this.nextAdjustAt = new AtomicLong(System.nanoTime() + adjustNanos);
+		}
+
+		@Override
+		public boolean select() {
+			events.increment();
+			long now = System.nanoTime();
+			long next = nextAdjustAt.get();
+			if (now - next >= 0 && nextAdjustAt.compareAndSet(next, now + adjustNanos)) {
+				adjust(now - next + adjustNanos);
+			}
+			double p = probability;
+			return p >= 1 || ThreadLocalRandom.current().nextDouble() < p;
+		}
+
+		private void adjust(long elapsedNanos) {
+			double rate = events.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+			eventRate = eventRate < 0 ? rate : eventRate + ALPHA * (rate - eventRate);
+			probability = eventRate <= targetPerSecond ? 1 : targetPerSecond / eventRate;
+		}
+
+		/**
+		 * 当前的采样率, 0-1
+		 */
+		public double getProbability() {
+			return probability;
+		}
+
+	}
+
+	/**
+	 * 按trace id散列值采样. 字符串id以MurmurHash3散列, long型id以其混淆函数散列, 取高53位与采样率比较.
+	 * 无id的{@link #select()}仍为随机采样
+	 */
+	public static class HashSampler extends Sampler {
+
+		private final double threshold;
+
+		protected HashSampler(double selectPercent) {
+			super(selectPercent);
+			this.threshold = selectPercent / 100;
+		}
+
+		public boolean select(String traceId) {
+			byte[] bytes = traceId.getBytes(StandardCharsets.UTF_8);
+			return selected(MurmurHash3.hash128(bytes)[0]);
+		}
+
+		public boolean select(long traceId) {
+			return selected(MurmurHash3.fmix64(traceId));
+		}
+
+		private boolean selected(long hash) {
+			return (hash >>> 11) * 0x1.0p-53 < threshold;
+		}
+
+	}
+
 }
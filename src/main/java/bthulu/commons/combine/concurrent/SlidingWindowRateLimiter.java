@@ -0,0 +1,169 @@
+package bthulu.commons.combine.concurrent;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 滑动窗口限流器, 窗口内获取的许可总数不超过maxPermits.
+ *
+ * 1. 窗口分为若干时间片, 构成环形数组, 每个元素的高32位为时间片序号, 低32位为该时间片已发放的许可数, 以CAS更新, 无锁.
+ * 序号与当前窗口不符的元素视为0, 再次写入时重置, 不需要后台线程清理
+ *
+ * 2. 窗口内之前的时间片在当前时间片内不再变化, 只需CAS当前时间片的计数.
+ * 取时间后被挂起的线程不会覆盖已被之后的时间片占用的元素; CAS成功后若时间已进入下一时间片, 其他线程可能已将本时间片按旧值计入,
+ * 此时撤销本次计数并重试, 因此并发时不会超发
+ *
+ * 3. 窗口按时间片滑动, 实际窗口在(windowMillis - 时间片长度, windowMillis]之间, 时间片越多越平滑.
+ * 许可不足时等待到足够多的时间片滑出窗口, 超过timeout时立即拒绝
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+	private static final long MASK = 0xFFFFFFFFL;
+
+	private final int maxPermits;
+
+	private final long sliceNanos;
+
+	private final AtomicLongArray slices;
+
+	private final long baseNanos = System.nanoTime();
+
+	private final LongAdder rejected = new LongAdder();
+
+	public SlidingWindowRateLimiter(int maxPermits, long windowMillis) {
+		this(maxPermits, windowMillis, 10);
+	}
+
+	/**
+	 * @param maxPermits 窗口内的最大许可数
+	 * @param windowMillis 窗口长度, 单位为毫秒
+	 * @param sliceCount 窗口分为多少个时间片
+	 */
+	public SlidingWindowRateLimiter(int maxPermits, long windowMillis, int sliceCount) {
+		Validate.isTrue(maxPermits > 0, "maxPermits must > 0");
+		Validate.isTrue(sliceCount > 0, "sliceCount must > 0");
+		Validate.isTrue(windowMillis >= sliceCount, "windowMillis must >= sliceCount");
+		this.maxPermits = maxPermits;
+		this.sliceNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis) / sliceCount;
+		this.slices = new AtomicLongArray(sliceCount);
+	}
+
+	@Override
+	public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+		Validate.isTrue(permits > 0, "permits must > 0");
+		if (permits > maxPermits) {
+			rejected.increment();
+			return false;
+		}
+		long deadline = System.nanoTime() + Math.max(0, unit.toNanos(timeout));
+		for (;;) {
+			long waitNanos = acquireOrWait(permits);
+			if (waitNanos == 0) {
+				return true;
+			}
+			if (System.nanoTime() + waitNanos - deadline > 0) {
+				rejected.increment();
+				return false;
+			}
+			ThreadUtil.sleepUninterruptibly(waitNanos);
+		}
+	}
+
+	/**
+	 * 获取许可, 成功时返回0, 否则返回至少还须等待的纳秒数
+	 */
+	private long acquireOrWait(int permits) {
+		for (;;) {
+			// 每次重试都重新取时间, 避免以过期的序号覆盖新的时间片
+			long elapsedNanos = System.nanoTime() - baseNanos;
+			long index = elapsedNanos / sliceNanos;
+			int slot = slot(index);
+			long past = 0;
+			for (int i = 1; i < slices.length(); i++) {
+				past += count(index - i);
+			}
+			long current = slices.get(slot);
+			int stored = (int) (current >>> 32);
+			if (stored - (int) index > 0) {
+				// 取时间后被挂起, 元素已被之后的时间片占用, 不能以过期的序号覆盖
+				continue;
+			}
+			long count = stored == (int) index ? current & MASK : 0;
+			if (past + count + permits > maxPermits) {
+				return waitNanos(past + count + permits - maxPermits, index, elapsedNanos);
+			}
+			if (slices.compareAndSet(slot, current, (index << 32) | (count + permits))) {
+				if ((System.nanoTime() - baseNanos) / sliceNanos == index) {
+					return 0;
+				}
+				rollback(slot, index, permits);
+			}
+		}
+	}
+
+	// 撤销时间片index中的permits个许可, 元素已被之后的时间片占用时无需撤销
+	private void rollback(int slot, long index, int permits) {
+		for (;;) {
+			long value = slices.get(slot);
+			if ((int) (value >>> 32) != (int) index || slices.compareAndSet(slot, value, value - permits)) {
+				return;
+			}
+		}
+	}
+
+	// 由旧到新累计滑出窗口的许可数, 直到不少于excess, 返回该时间片滑出窗口的等待时间
+	private long waitNanos(long excess, long index, long elapsedNanos) {
+		int length = slices.length();
+		long freed = 0;
+		for (int i = length - 1; i > 0; i--) {
+			freed += count(index - i);
+			if (freed >= excess) {
+				return (index - i + length) * sliceNanos - elapsedNanos;
+			}
+		}
+		return (index + length) * sliceNanos - elapsedNanos;
+	}
+
+	// 时间片index的许可数, 元素已被其他时间片占用时为0
+	private long count(long index) {
+		if (index < 0) {
+			return 0;
+		}
+		long value = slices.get(slot(index));
+		return (int) (value >>> 32) == (int) index ? value & MASK : 0;
+	}
+
+	private int slot(long index) {
+		return (int) (index % slices.length());
+	}
+
+	/**
+	 * 当前窗口内已发放的许可数
+	 */
+	public long getWindowCount() {
+		long index = (System.nanoTime() - baseNanos) / sliceNanos;
+		long total = 0;
+		for (int i = 0; i < slices.length(); i++) {
+			total += count(index - i);
+		}
+		return total;
+	}
+
+	public int getMaxPermits() {
+		return maxPermits;
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "SlidingWindowRateLimiter{maxPermits=" + maxPermits + ", window=" + getWindowCount() + ", rejected="
+				+ getRejectedCount() + "}";
+	}
+}
@@ -0,0 +1,338 @@
+package bthulu.commons.combine.concurrent;
+
+import bthulu.commons.combine.text.WildcardMatcher;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 常驻的线程栈采样分析器, 与{@link ThreadDumpper}互补, 用于持续观察CPU消耗在哪些代码上.
+ *
+ * 1. 后台线程每隔采样间隔通过ThreadMXBean获取线程名匹配{@link WildcardMatcher}模式的线程栈, 默认只采样RUNNABLE状态的线程
+ *
+ * 2. 线程栈按帧(类名.方法名)由外向内合并到前缀树中, 每个时间片一棵树, 节点数超过上限后不再展开新的帧, 计入当前节点.
+ * 最近的全部时间片构成滚动窗口, 可导出为火焰图使用的折叠栈格式(<code>帧1;帧2;帧3 次数</code>)
+ *
+ * 3. 采样线程的平均CPU耗时超过采样间隔的overheadPercent时, 自动延长采样间隔, 使采样线程的CPU占用不超过该比例
+ */
+public class StackSampler {
+
+	private static Logger logger = LoggerFactory.getLogger(StackSampler.class);
+
+	private static final String TRUNCATED = "[truncated]";
+
+	// 每个线程栈最多采样的帧数, 超出时丢弃最外层的帧
+	private static final int MAX_DEPTH = 128;
+
+	private final String[] threadNamePatterns;
+
+	private final long intervalNanos;
+
+	private final double overheadPercent;
+
+	private final int maxNodes;
+
+	private final long sliceMillis;
+
+	// 滚动窗口内的时间片, 由this保护
+	private final Slice[] slices;
+
+	private int current;
+
+	private boolean runnableOnly = true;
+
+	// 线程id及其名称是否匹配, 仅由采样线程访问
+	private final Map<Long, Boolean> matches = new HashMap<>();
+
+	private final ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+
+	private final boolean cpuTimeSupported = mxBean.isCurrentThreadCpuTimeSupported();
+
+	private final LongAdder samples = new LongAdder();
+
+	private volatile long effectiveIntervalNanos;
+
+	private volatile long lastCostNanos;
+
+	// 采样耗时的移动平均, 仅由采样线程访问
+	private long averageCostNanos;
+
+	private volatile Thread worker;
+
+	/**
+	 * @param threadNamePatterns 采样的线程名, 支持*和?通配符
+	 * @param intervalMillis 采样间隔, 单位为毫秒
+	 * @param overheadPercent 采样耗时占采样间隔的最大比例, 0-100
+	 * @param windowMillis 滚动窗口, 单位为毫秒, 分为6个时间片滚动
+	 * @param maxNodes 每个时间片的前缀树最大节点数
+	 */
+	public StackSampler(String[] threadNamePatterns, long intervalMillis, double overheadPercent, long windowMillis,
+			int maxNodes) {
+		Validate.notEmpty(threadNamePatterns, "threadNamePatterns is empty");
+		Validate.isTrue(intervalMillis > 0, "intervalMillis must > 0");
+		Validate.isTrue(overheadPercent > 0 && overheadPercent <= 100, "overheadPercent must in (0, 100]");
+		Validate.isTrue(maxNodes > 0, "maxNodes must > 0");
+		this.threadNamePatterns = threadNamePatterns.clone();
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.effectiveIntervalNanos = intervalNanos;
+		this.overheadPercent = overheadPercent;
+		this.maxNodes = maxNodes;
+		this.slices = new Slice[6];
+		this.sliceMillis = Math.max(1, windowMillis / slices.length);
+		for (int i = 0; i < slices.length; i++) {
+			slices[i] = new Slice();
+		}
+	}
+
+	/**
+	 * 启动采样线程
+	 */
+	public synchronized void start() {
+		if (worker != null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		slices[current].startAt = now;
+		worker = new Thread(this::run, "stack-sampler");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * 停止采样线程, 已采样的数据仍可导出
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			thread = worker;
+			worker = null;
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * 是否只采样RUNNABLE状态的线程, 默认为true. 为false时同时统计等待锁及IO的线程, 反映耗时而非CPU
+	 */
+	public void setRunnableOnly(boolean runnableOnly) {
+		this.runnableOnly = runnableOnly;
+	}
+
+	/**
+	 * 导出滚动窗口内的折叠栈, 每行为<code>由外向内以分号分隔的帧 次数</code>, 可直接用于flamegraph.pl等工具
+	 */
+	public String toFolded() {
+		Node merged = new Node(null);
+		synchronized (this) {
+			long windowStart = System.currentTimeMillis() - sliceMillis * slices.length;
+			for (Slice slice : slices) {
+				if (slice.startAt >= windowStart) {
+					merge(slice.root, merged);
+				}
+			}
+		}
+		StringBuilder sb = new StringBuilder(4096);
+		StringBuilder path = new StringBuilder(256);
+		for (Node child : merged.children.values()) {
+			appendFolded(child, path, sb);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 已采样的线程栈个数
+	 */
+	public long getSampleCount() {
+		return samples.sum();
+	}
+
+	/**
+	 * 当前的采样间隔, 单次采样耗时超出预算时大于设定值, 单位为毫秒
+	 */
+	public long getEffectiveIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(effectiveIntervalNanos);
+	}
+
+	/**
+	 * 最近一次采样的CPU耗时, 单位为微秒
+	 */
+	public long getLastCostMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(lastCostNanos);
+	}
+
+	private void run() {
+		while (worker == Thread.currentThread()) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(effectiveIntervalNanos);
+			}
+			catch (InterruptedException e) {
+				// stop()时中断, 由worker控制退出
+				continue;
+			}
+			long start = cpuTime();
+			try {
+				sample();
+			}
+			catch (Throwable t) {
+				logger.warn("线程栈采样出错", t);
+			}
+			long cost = cpuTime() - start;
+			// 以平均耗时计算, 避免首次采样等偶发的高耗时使采样间隔大幅延长
+			averageCostNanos = (averageCostNanos * 7 + cost) / 8;
+			lastCostNanos = cost;
+			effectiveIntervalNanos = Math.max(intervalNanos, (long) (averageCostNanos * 100 / overheadPercent));
+		}
+	}
+
+	// 采样线程的CPU时间, 不支持时为经过的时间
+	private long cpuTime() {
+		return cpuTimeSupported ? mxBean.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	private void sample() {
+		long[] ids = mxBean.getAllThreadIds();
+		List<Long> unknown = new ArrayList<>();
+		List<Long> selected = new ArrayList<>();
+		for (long id : ids) {
+			Boolean match = matches.get(id);
+			if (match == null) {
+				unknown.add(id);
+			}
+			else if (match) {
+				selected.add(id);
+			}
+		}
+		if (!unknown.isEmpty()) {
+			// 只取线程名, 不获取线程栈
+			for (ThreadInfo info : mxBean.getThreadInfo(toArray(unknown), 0)) {
+				if (info != null) {
+					boolean match = WildcardMatcher.matchOne(info.getThreadName(), threadNamePatterns) >= 0;
+					matches.put(info.getThreadId(), match);
+					if (match) {
+						selected.add(info.getThreadId());
+					}
+				}
+			}
+			if (matches.size() > ids.length * 2) {
+				// 清理已结束的线程, 下次采样时重新匹配
+				matches.clear();
+			}
+		}
+		if (selected.isEmpty()) {
+			return;
+		}
+		long self = Thread.currentThread().getId();
+		ThreadInfo[] infos = mxBean.getThreadInfo(toArray(selected), MAX_DEPTH);
+		synchronized (this) {
+			Slice slice = currentSlice(System.currentTimeMillis());
+			for (ThreadInfo info : infos) {
+				if (info == null || info.getThreadId() == self
+						|| (runnableOnly && info.getThreadState() != Thread.State.RUNNABLE)) {
+					continue;
+				}
+				StackTraceElement[] stackTrace = info.getStackTrace();
+				if (stackTrace.length == 0) {
+					continue;
+				}
+				slice.add(stackTrace, maxNodes);
+				samples.increment();
+			}
+		}
+	}
+
+	// 当前时间片已结束时滚动到下一个, 须持有this
+	private Slice currentSlice(long now) {
+		Slice slice = slices[current];
+		if (now - slice.startAt >= sliceMillis) {
+			current = (current + 1) % slices.length;
+			slice = new Slice();
+			slice.startAt = now;
+			slices[current] = slice;
+		}
+		return slice;
+	}
+
+	private static long[] toArray(List<Long> ids) {
+		long[] array = new long[ids.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = ids.get(i);
+		}
+		return array;
+	}
+
+	private static void merge(Node from, Node to) {
+		to.self += from.self;
+		for (Map.Entry<String, Node> entry : from.children.entrySet()) {
+			merge(entry.getValue(), to.children.computeIfAbsent(entry.getKey(), Node::new));
+		}
+	}
+
+	private static void appendFolded(Node node, StringBuilder path, StringBuilder sb) {
+		int length = path.length();
+		if (length > 0) {
+			path.append(';');
+		}
+		path.append(node.frame);
+		if (node.self > 0) {
+			sb.append(path).append(' ').append(node.self).append('\n');
+		}
+		for (Node child : node.children.values()) {
+			appendFolded(child, path, sb);
+		}
+		path.setLength(length);
+	}
+
+	private static final class Node {
+		final String frame;
+		final Map<String, Node> children = new HashMap<>();
+		// 以该帧为最内层的采样次数
+		long self;
+
+		Node(String frame) {
+			this.frame = frame;
+		}
+	}
+
+	private static final class Slice {
+		final Node root = new Node(null);
+		int nodes;
+		long startAt;
+
+		// 由外向内逐帧下降, 节点数达到上限后新的帧合并为TRUNCATED
+		void add(StackTraceElement[] stackTrace, int maxNodes) {
+			Node node = root;
+			for (int i = stackTrace.length - 1; i >= 0; i--) {
+				StackTraceElement element = stackTrace[i];
+				String frame = element.getClassName() + '.' + element.getMethodName();
+				Node child = node.children.get(frame);
+				if (child == null) {
+					if (nodes >= maxNodes) {
+						child = node.children.get(TRUNCATED);
+						if (child == null) {
+							child = new Node(TRUNCATED);
+							node.children.put(TRUNCATED, child);
+						}
+						node = child;
+						break;
+					}
+					child = new Node(frame);
+					node.children.put(frame, child);
+					nodes++;
+				}
+				node = child;
+			}
+			node.self++;
+		}
+	}
+}
@@ -3,8 +3,18 @@ package bthulu.commons.combine.concurrent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,6 +23,10 @@ import java.util.concurrent.TimeUnit;
  * 因为ThreadDump本身会造成JVM停顿，所以加上了开关和最少间隔时间的选项(默认不限制)
  *
  * 因为ThreadInfo的toString()最多只会打印8层的StackTrace，所以加上了最大打印层数的选项.(默认为8)
+ *
+ * {@link #hotThreadsIfNeed(String)}基于ThreadMXBean, 间隔一段时间采样两次各线程的CPU时间, 打印CPU占用最高的线程的完整线程栈,
+ * 锁及其持有者, 以及死锁的线程. 采样, 格式化和打印均在后台线程中执行, 调用方线程不会被阻塞, 输出长度有上限.
+ * 与ThreadDump分别计算最小间隔, 互不影响.
  */
 public class ThreadDumpper {
 
@@ -20,6 +34,12 @@ public class ThreadDumpper {
 
 	private static final int DEFAULT_MIN_INTERVAL = 1000 * 60 * 1; // 1分钟
 
+	private static final int DEFAULT_HOT_THREADS = 5;
+
+	private static final long DEFAULT_SAMPLE_INTERVAL = 500;
+
+	private static final int DEFAULT_MAX_OUTPUT_CHARS = 64 * 1024;
+
 	private static Logger logger = LoggerFactory.getLogger(ThreadDumpper.class);
 
 	private boolean enable = true; // 快速关闭该功能
@@ -30,6 +50,17 @@ public class ThreadDumpper {
 
 	private volatile Long lastThreadDumpTime = 0L;
 
+	private volatile Long lastHotThreadsTime = 0L; // 与ThreadDump分别计算最小间隔
+
+	private int hotThreads = DEFAULT_HOT_THREADS; // 打印CPU占用最高的线程数
+
+	private long sampleIntervalMills = DEFAULT_SAMPLE_INTERVAL; // 两次采样CPU时间的间隔，单位为毫秒
+
+	private int maxOutputChars = DEFAULT_MAX_OUTPUT_CHARS; // 单次输出的最大字符数
+
+	// 后台分析线程, 首次使用时创建, 已有任务在等待时丢弃新的任务
+	private volatile ThreadPoolExecutor analyzer;
+
 	public ThreadDumpper() {
 	}
 
@@ -79,6 +110,203 @@ public class ThreadDumpper {
 
 	}
 
+	/**
+	 * 符合条件则在后台线程中分析CPU占用最高的线程及死锁并打印, 立即返回.
+	 * @param reasonMsg 发生分析的原因
+	 */
+	public void hotThreadsIfNeed(String reasonMsg) {
+		if (!enable) {
+			return;
+		}
+
+		synchronized (this) {
+			if (System.currentTimeMillis() - lastHotThreadsTime < leastIntervalMills) {
+				return;
+			}
+			else {
+				lastHotThreadsTime = System.currentTimeMillis();
+			}
+		}
+
+		getAnalyzer().execute(() -> {
+			try {
+				logger.info("Hot threads by ThreadDumpper" + (reasonMsg != null ? (" for " + reasonMsg) : "")
+						+ hotThreads());
+			}
+			catch (Throwable t) {
+				logger.warn("分析线程出错", t);
+			}
+		});
+	}
+
+	/**
+	 * 间隔sampleIntervalMills毫秒采样两次各线程的CPU时间, 返回CPU占用最高的线程及死锁线程的信息, 会阻塞采样间隔的时间.
+	 * 不支持线程CPU时间时按RUNNABLE状态的线程输出.
+	 */
+	public String hotThreads() throws InterruptedException {
+		ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+		boolean cpuTime = mxBean.isThreadCpuTimeSupported() && mxBean.isThreadCpuTimeEnabled();
+		Map<Long, Long> first = cpuTime ? cpuTimes(mxBean) : new HashMap<>();
+		long start = System.nanoTime();
+		if (cpuTime) {
+			Thread.sleep(sampleIntervalMills);
+		}
+		long elapsed = System.nanoTime() - start;
+		Map<Long, Long> second = cpuTime ? cpuTimes(mxBean) : new HashMap<>();
+
+		List<long[]> deltas = new ArrayList<>();
+		if (cpuTime) {
+			for (Entry<Long, Long> entry : second.entrySet()) {
+				Long before = first.get(entry.getKey());
+				if (before != null) {
+					deltas.add(new long[] { entry.getKey(), entry.getValue() - before });
+				}
+			}
+			deltas.sort((a, b) -> Long.compare(b[1], a[1]));
+		}
+		else {
+			for (ThreadInfo info : mxBean.getThreadInfo(mxBean.getAllThreadIds())) {
+				if (info != null && info.getThreadState() == Thread.State.RUNNABLE) {
+					deltas.add(new long[] { info.getThreadId(), -1 });
+				}
+			}
+		}
+		int count = Math.min(hotThreads, deltas.size());
+		long[] ids = new long[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = deltas.get(i)[0];
+		}
+
+		BoundedBuilder sb = new BoundedBuilder(maxOutputChars);
+		sb.append('\n').append("Top ").append(count).append(" hot threads in ")
+				.append(TimeUnit.NANOSECONDS.toMillis(elapsed)).append("ms:\n");
+		ThreadInfo[] infos = mxBean.getThreadInfo(ids, mxBean.isObjectMonitorUsageSupported(),
+				mxBean.isSynchronizerUsageSupported());
+		for (int i = 0; i < count; i++) {
+			if (infos[i] != null) {
+				long delta = deltas.get(i)[1];
+				sb.append(delta < 0 ? "" : String.format("%.1f%% cpu ", delta * 100.0 / elapsed));
+				dumpThreadInfo(infos[i], sb);
+			}
+		}
+
+		long[] deadlocked = mxBean.isSynchronizerUsageSupported() ? mxBean.findDeadlockedThreads()
+				: mxBean.findMonitorDeadlockedThreads();
+		if (deadlocked != null) {
+			sb.append("Found ").append(deadlocked.length).append(" deadlocked threads:\n");
+			for (ThreadInfo info : mxBean.getThreadInfo(deadlocked, mxBean.isObjectMonitorUsageSupported(),
+					mxBean.isSynchronizerUsageSupported())) {
+				if (info != null) {
+					dumpThreadInfo(info, sb);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static Map<Long, Long> cpuTimes(ThreadMXBean mxBean) {
+		long[] ids = mxBean.getAllThreadIds();
+		Map<Long, Long> times = new HashMap<>(ids.length * 2);
+		for (long id : ids) {
+			long time = mxBean.getThreadCpuTime(id);
+			// 线程已结束时返回-1
+			if (time >= 0) {
+				times.put(id, time);
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * 打印完整的stack及等待的锁, 锁的持有者, 各层持有的锁
+	 */
+	private void dumpThreadInfo(ThreadInfo info, BoundedBuilder sb) {
+		sb.append('\"').append(info.getThreadName()).append("\" Id=").append(info.getThreadId())
+				.append(' ').append(info.getThreadState());
+		if (info.getLockName() != null) {
+			sb.append(" on ").append(info.getLockName());
+		}
+		if (info.getLockOwnerName() != null) {
+			sb.append(" owned by \"").append(info.getLockOwnerName()).append("\" Id=").append(info.getLockOwnerId());
+		}
+		sb.append('\n');
+		StackTraceElement[] stackTrace = info.getStackTrace();
+		MonitorInfo[] monitors = info.getLockedMonitors();
+		for (int i = 0; i < stackTrace.length; i++) {
+			sb.append("\tat ").append(stackTrace[i]).append('\n');
+			for (MonitorInfo monitor : monitors) {
+				if (monitor.getLockedStackDepth() == i) {
+					sb.append("\t-  locked ").append(monitor).append('\n');
+				}
+			}
+		}
+		LockInfo[] synchronizers = info.getLockedSynchronizers();
+		if (synchronizers.length > 0) {
+			sb.append("\tLocked synchronizers:\n");
+			for (LockInfo synchronizer : synchronizers) {
+				sb.append("\t- ").append(synchronizer).append('\n');
+			}
+		}
+		sb.append('\n');
+	}
+
+	private ThreadPoolExecutor getAnalyzer() {
+		ThreadPoolExecutor executor = analyzer;
+		if (executor == null) {
+			synchronized (this) {
+				executor = analyzer;
+				if (executor == null) {
+					executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), r -> {
+						Thread thread = new Thread(r, "thread-dumpper");
+						thread.setDaemon(true);
+						return thread;
+					}, new ThreadPoolExecutor.DiscardPolicy());
+					analyzer = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * 超过最大长度后不再追加的StringBuilder
+	 */
+	private static class BoundedBuilder {
+
+		private final StringBuilder sb = new StringBuilder(1024);
+
+		private final int maxChars;
+
+		private boolean truncated;
+
+		BoundedBuilder(int maxChars) {
+			this.maxChars = maxChars;
+		}
+
+		BoundedBuilder append(Object value) {
+			if (!truncated) {
+				String s = String.valueOf(value);
+				if (sb.length() + s.length() > maxChars) {
+					sb.append(s, 0, maxChars - sb.length()).append("\n...(truncated)");
+					truncated = true;
+				}
+				else {
+					sb.append(s);
+				}
+			}
+			return this;
+		}
+
+		BoundedBuilder append(char c) {
+			return append(String.valueOf(c));
+		}
+
+		@Override
+		public String toString() {
+			return sb.toString();
+		}
+	}
+
 	/**
 	 * 打印全部的stack，重新实现threadInfo的toString()函数，因为默认最多只打印8层的stack.
 	 * 同时，不再打印lockedMonitors和lockedSynchronizers.
@@ -124,4 +352,25 @@ public class ThreadDumpper {
 		this.maxStackLevel = maxStackLevel;
 	}
 
+	/**
+	 * 分析时打印CPU占用最高的线程数, 默认为5
+	 */
+	public void setHotThreads(int hotThreads) {
+		this.hotThreads = hotThreads;
+	}
+
+	/**
+	 * 分析时两次采样CPU时间的间隔，单位为毫秒，默认为500
+	 */
+	public void setSampleInterval(long sampleIntervalMills) {
+		this.sampleIntervalMills = sampleIntervalMills;
+	}
+
+	/**
+	 * 分析时单次输出的最大字符数, 超出部分截断, 默认为64K
+	 */
+	public void setMaxOutputChars(int maxOutputChars) {
+		this.maxOutputChars = maxOutputChars;
+	}
+
 }
@@ -0,0 +1,142 @@
+package bthulu.commons.combine.concurrent;
+
+import bthulu.commons.combine.RuntimeUtil;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建有名称, 有界且带统计的线程池.
+ *
+ * <pre>
+ * InstrumentedThreadPool pool = ThreadPoolBuilder.named("order").coreSize(4).maxSize(16).queueSize(1000)
+ * 		.threadDumpOnSaturation(new ThreadDumpper()).shutdownHook(5000).build();
+ * </pre>
+ *
+ * 线程名为<code>名称-序号</code>, 默认为守护线程, 未捕获的异常打印日志. 默认核心及最大线程数为CPU核数, 队列长度1024, 队列满时抛出异常.
+ */
+public class ThreadPoolBuilder {
+
+	private static Logger logger = LoggerFactory.getLogger(ThreadPoolBuilder.class);
+
+	private final String name;
+
+	private int coreSize = RuntimeUtil.getCores();
+
+	private int maxSize = RuntimeUtil.getCores();
+
+	private int queueSize = 1024;
+
+	private long keepAliveMillis = 60_000;
+
+	private boolean daemon = true;
+
+	private RejectedExecutionHandler rejectHandler = new ThreadPoolExecutor.AbortPolicy();
+
+	private ThreadDumpper threadDumpper;
+
+	private double saturationRatio = 0.9;
+
+	private long shutdownTimeoutMillis = -1;
+
+	private ThreadPoolBuilder(String name) {
+		Validate.notBlank(name, "name is blank");
+		this.name = name;
+	}
+
+	public static ThreadPoolBuilder named(String name) {
+		return new ThreadPoolBuilder(name);
+	}
+
+	public ThreadPoolBuilder coreSize(int coreSize) {
+		this.coreSize = coreSize;
+		return this;
+	}
+
+	public ThreadPoolBuilder maxSize(int maxSize) {
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * 队列长度, 0为不排队, 没有空闲线程且已达最大线程数时直接拒绝
+	 */
+	public ThreadPoolBuilder queueSize(int queueSize) {
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * 超过核心线程数的线程的最大空闲时间, 单位为毫秒
+	 */
+	public ThreadPoolBuilder keepAlive(long keepAliveMillis) {
+		this.keepAliveMillis = keepAliveMillis;
+		return this;
+	}
+
+	public ThreadPoolBuilder daemon(boolean daemon) {
+		this.daemon = daemon;
+		return this;
+	}
+
+	/**
+	 * 拒绝策略, 在拒绝计数之后调用. CallerRunsPolicy在提交线程中执行的任务不计为拒绝, 见{@link InstrumentedThreadPool#getCallerRunsCount()}
+	 */
+	public ThreadPoolBuilder rejectHandler(RejectedExecutionHandler rejectHandler) {
+		this.rejectHandler = rejectHandler;
+		return this;
+	}
+
+	/**
+	 * 队列中的任务数达到队列长度的saturationRatio或任务被拒绝时, 在后台打印繁忙的线程, 打印间隔由threadDumpper控制
+	 */
+	public ThreadPoolBuilder threadDumpOnSaturation(ThreadDumpper threadDumpper) {
+		this.threadDumpper = threadDumpper;
+		return this;
+	}
+
+	/**
+	 * 判定队列饱和的比例, 默认0.9
+	 */
+	public ThreadPoolBuilder saturationRatio(double saturationRatio) {
+		this.saturationRatio = saturationRatio;
+		return this;
+	}
+
+	/**
+	 * JVM关闭时通过{@link InstrumentedThreadPool#shutdownGracefully(long)}关闭线程池
+	 * @param timeoutMillis 等待已提交任务完成的最长时间, 单位为毫秒
+	 */
+	public ThreadPoolBuilder shutdownHook(long timeoutMillis) {
+		this.shutdownTimeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	public InstrumentedThreadPool build() {
+		Validate.isTrue(coreSize >= 0, "coreSize must >= 0");
+		Validate.isTrue(maxSize > 0 && maxSize >= coreSize, "maxSize must > 0 and >= coreSize");
+		Validate.isTrue(queueSize >= 0, "queueSize must >= 0");
+		Validate.isTrue(saturationRatio > 0 && saturationRatio <= 1, "saturationRatio must in (0, 1]");
+		BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize);
+		AtomicInteger threadNumber = new AtomicInteger();
+		boolean daemonThread = daemon;
+		InstrumentedThreadPool pool = new InstrumentedThreadPool(name, coreSize, maxSize, keepAliveMillis, queue, r -> {
+			Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(daemonThread);
+			thread.setUncaughtExceptionHandler((t, e) -> logger.error("线程{}未捕获的异常", t.getName(), e));
+			return thread;
+		}, rejectHandler, threadDumpper, Math.max(1, (int) Math.ceil(queueSize * saturationRatio)));
+		if (shutdownTimeoutMillis >= 0) {
+			long timeout = shutdownTimeoutMillis;
+			RuntimeUtil.addShutdownHook(() -> pool.shutdownGracefully(timeout), "thread-pool-" + name);
+		}
+		return pool;
+	}
+}
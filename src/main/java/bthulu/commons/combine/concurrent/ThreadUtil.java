@@ -1,6 +1,7 @@
 package bthulu.commons.combine.concurrent;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 线程相关工具类.
@@ -24,17 +25,35 @@ public class ThreadUtil {
 	}
 
 	/**
-	 * sleep等待，已捕捉并处理InterruptedException.
+	 * sleep等待，已捕捉并处理InterruptedException. 保留毫秒以下的精度, 在虚拟线程中不占用承载线程.
 	 */
 	public static void sleep(long duration, TimeUnit unit) {
 		try {
-			Thread.sleep(unit.toMillis(duration));
+			unit.sleep(duration);
 		}
 		catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
 	}
 
+	/**
+	 * 等待指定的纳秒数, 期间不响应中断, 返回前恢复线程的中断状态.
+	 */
+	public static void sleepUninterruptibly(long nanos) {
+		boolean interrupted = false;
+		long deadline = System.nanoTime() + nanos;
+		while (nanos > 0) {
+			LockSupport.parkNanos(nanos);
+			if (Thread.interrupted()) {
+				interrupted = true;
+			}
+			nanos = deadline - System.nanoTime();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/**
 	 * 纯粹为了提醒下处理InterruptedException的正确方式，除非你是在写不可中断的任务.
 	 */
@@ -0,0 +1,164 @@
+package bthulu.commons.combine.concurrent;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶限流器, 算法参考Guava的SmoothRateLimiter, 以CAS替换锁.
+ *
+ * 1. 桶中的令牌及下一个许可的发放时间保存在不可变的状态对象中, 以CAS整体替换, 无锁
+ *
+ * 2. 与Guava相同, 本次请求的许可在下一个许可发放时间即可获得, 其耗时推迟到后续请求, 即空闲时一次获取大量许可不需等待.
+ * 后续请求等待时间超过timeout时立即拒绝, 不占用许可
+ *
+ * 3. 不预热时桶容量为1秒的许可数, 初始为满桶, 桶中的令牌可立即使用.
+ * 预热时初始为冷状态, 桶中令牌越多发放越慢, 最慢为稳定间隔的3倍, 持续以稳定速率获取warmupMillis毫秒后达到稳定速率
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+	// 冷状态的许可间隔与稳定间隔的倍数
+	private static final double COLD_FACTOR = 3;
+
+	private final double permitsPerSecond;
+
+	private final double stableIntervalNanos;
+
+	private final double maxPermits;
+
+	// 令牌数超过该值时发放间隔随令牌数线性增长, 不预热时等于maxPermits
+	private final double thresholdPermits;
+
+	private final double slope;
+
+	// 空闲时生成一个令牌的时间
+	private final double coolDownIntervalNanos;
+
+	private final long baseNanos = System.nanoTime();
+
+	private final AtomicReference<State> state;
+
+	private final LongAdder rejected = new LongAdder();
+
+	public TokenBucketRateLimiter(double permitsPerSecond) {
+		this(permitsPerSecond, 0);
+	}
+
+	/**
+	 * @param permitsPerSecond 每秒发放的许可数
+	 * @param warmupMillis 预热时间, 单位为毫秒, 0为不预热
+	 */
+	public TokenBucketRateLimiter(double permitsPerSecond, long warmupMillis) {
+		Validate.isTrue(permitsPerSecond > 0, "permitsPerSecond must > 0");
+		Validate.isTrue(warmupMillis >= 0, "warmupMillis must >= 0");
+		this.permitsPerSecond = permitsPerSecond;
+		this.stableIntervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+		if (warmupMillis == 0) {
+			this.maxPermits = Math.max(1, permitsPerSecond);
+			this.thresholdPermits = maxPermits;
+			this.slope = 0;
+			this.coolDownIntervalNanos = stableIntervalNanos;
+		}
+		else {
+			double warmupNanos = TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+			double coldIntervalNanos = stableIntervalNanos * COLD_FACTOR;
+			this.thresholdPermits = 0.5 * warmupNanos / stableIntervalNanos;
+			this.maxPermits = thresholdPermits + 2.0 * warmupNanos / (stableIntervalNanos + coldIntervalNanos);
+			this.slope = (coldIntervalNanos - stableIntervalNanos) / (maxPermits - thresholdPermits);
+			this.coolDownIntervalNanos = warmupNanos / maxPermits;
+		}
+		this.state = new AtomicReference<>(new State(maxPermits, 0));
+	}
+
+	@Override
+	public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+		long waitNanos = reserve(permits, Math.max(0, unit.toNanos(timeout)));
+		if (waitNanos < 0) {
+			return false;
+		}
+		ThreadUtil.sleepUninterruptibly(waitNanos);
+		return true;
+	}
+
+	/**
+	 * 预留许可, 返回须等待的纳秒数, 超过timeoutNanos时返回-1
+	 */
+	private long reserve(int permits, long timeoutNanos) {
+		Validate.isTrue(permits > 0, "permits must > 0");
+		for (;;) {
+			long now = System.nanoTime() - baseNanos;
+			State current = state.get();
+			double stored = current.storedPermits;
+			long nextFree = current.nextFreeNanos;
+			if (now > nextFree) {
+				// 空闲期间生成的令牌
+				stored = Math.min(maxPermits, stored + (now - nextFree) / coolDownIntervalNanos);
+				nextFree = now;
+			}
+			long waitNanos = nextFree - now;
+			if (waitNanos > timeoutNanos) {
+				rejected.increment();
+				return -1;
+			}
+			double spend = Math.min(permits, stored);
+			long costNanos = storedPermitsToWaitTime(stored, spend) + (long) ((permits - spend) * stableIntervalNanos);
+			if (state.compareAndSet(current, new State(stored - spend, nextFree + costNanos))) {
+				return waitNanos;
+			}
+		}
+	}
+
+	// 从stored个令牌中取出take个的耗时, 即阈值以上梯形部分的面积加阈值以下的稳定间隔
+	private long storedPermitsToWaitTime(double stored, double take) {
+		double above = stored - thresholdPermits;
+		double nanos = 0;
+		if (above > 0) {
+			double taken = Math.min(above, take);
+			nanos = taken * (permitsToTime(above) + permitsToTime(above - taken)) / 2;
+			take -= taken;
+		}
+		if (slope > 0) {
+			nanos += stableIntervalNanos * take;
+		}
+		return (long) nanos;
+	}
+
+	private double permitsToTime(double permits) {
+		return stableIntervalNanos + permits * slope;
+	}
+
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * 当前桶中的令牌数, 不含尚未结算的空闲时间生成的令牌
+	 */
+	public double getStoredPermits() {
+		return state.get().storedPermits;
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "TokenBucketRateLimiter{permitsPerSecond=" + permitsPerSecond + ", maxPermits=" + maxPermits
+				+ ", rejected=" + getRejectedCount() + "}";
+	}
+
+	private static final class State {
+		final double storedPermits;
+		// 下一个许可的发放时间, 相对于baseNanos
+		final long nextFreeNanos;
+
+		State(double storedPermits, long nextFreeNanos) {
+			this.storedPermits = storedPermits;
+			this.nextFreeNanos = nextFreeNanos;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package bthulu.commons.combine.hash;
+
+/**
+ * MurmurHash3 x64 128位版本, 参考Austin Appleby的MurmurHash3_x64_128及guava的Murmur3_128HashFunction实现.
+ *
+ * 非加密散列, 速度远快于md5/sha1, 适合生成缓存key, 分片路由等不要求抗碰撞攻击的场景.
+ */
+public abstract class MurmurHash3 {
+
+	private static final long C1 = 0x87c37b91114253d5L;
+
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	/**
+	 * 计算128位散列值
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return 长度为2的数组, 分别为散列值的低64位和高64位
+	 */
+	@SuppressWarnings("fallthrough")
+	public static long[] hash128(final byte[] data, final int offset, final int length, final long seed) {
+		long h1 = seed;
+		long h2 = seed;
+		final int blocks = length >>> 4;
+
+		for (int i = 0; i < blocks; i++) {
+			int index = offset + (i << 4);
+			long k1 = getLong(data, index);
+			long k2 = getLong(data, index + 8);
+
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		// 尾部不足16字节的部分
+		int tail = offset + (blocks << 4);
+		long k1 = 0;
+		long k2 = 0;
+		switch (length & 15) {
+		case 15:
+			k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+		case 14: // NOSONAR
+			k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+		case 13: // NOSONAR
+			k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+		case 12: // NOSONAR
+			k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+		case 11: // NOSONAR
+			k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+		case 10: // NOSONAR
+			k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+		case 9: // NOSONAR
+			k2 ^= (long) (data[tail + 8] & 0xff);
+			h2 ^= mixK2(k2);
+		case 8: // NOSONAR
+			k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+		case 7: // NOSONAR
+			k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+		case 6: // NOSONAR
+			k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+		case 5: // NOSONAR
+			k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+		case 4: // NOSONAR
+			k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+		case 3: // NOSONAR
+			k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+		case 2: // NOSONAR
+			k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+		case 1: // NOSONAR
+			k1 ^= (long) (data[tail] & 0xff);
+			h1 ^= mixK1(k1);
+		default:
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+
+		h1 += h2;
+		h2 += h1;
+
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+
+		h1 += h2;
+		h2 += h1;
+
+		return new long[] { h1, h2 };
+	}
+
+	/**
+	 * 以0为种子计算128位散列值
+	 */
+	public static long[] hash128(final byte[] data) {
+		return hash128(data, 0, data.length, 0);
+	}
+
+	private static long getLong(byte[] data, int index) {
+		return (data[index] & 0xffL) | (data[index + 1] & 0xffL) << 8 | (data[index + 2] & 0xffL) << 16
+				| (data[index + 3] & 0xffL) << 24 | (data[index + 4] & 0xffL) << 32 | (data[index + 5] & 0xffL) << 40
+				| (data[index + 6] & 0xffL) << 48 | (data[index + 7] & 0xffL) << 56;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		return k2;
+	}
+
+	/**
+	 * 64位混淆函数, 用于将分布不均匀的long(如自增id)散列为均匀分布
+	 */
+	public static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
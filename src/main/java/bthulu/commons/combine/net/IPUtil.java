@@ -7,6 +7,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.function.Supplier;
 
@@ -63,7 +64,7 @@ public class IPUtil {
 	public static int ipv4StringToInt(String ipv4Str) {
 		byte[] byteAddress = ipv4StringToBytes(ipv4Str);
 		ByteBuffer buf = ByteBuffer.allocate(byteAddress.length).put(byteAddress);
-		buf.flip();
+		((Buffer) buf).flip();
 		return buf.getInt();
 	}
 
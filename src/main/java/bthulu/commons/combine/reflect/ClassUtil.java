@@ -4,7 +4,6 @@ import bthulu.commons.combine.exception.Asserts;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.reflect.Reflection;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -27,7 +26,7 @@ public class ClassUtil {
 	 */
 	public static boolean isPresent(String className) {
 		try {
-			ClassLoader classLoader = Reflection.getCallerClass().getClassLoader();
+			ClassLoader classLoader = CallerResolver.INSTANCE.callerOf(2).getClassLoader();
 			if (classLoader != null) {
 				classLoader.loadClass(className);
 				return true;
@@ -120,4 +119,17 @@ public class ClassUtil {
 		return (Class) params[index];
 	}
 
+	/**
+	 * 通过{@link SecurityManager#getClassContext()}获取调用栈上的类, 不需安装SecurityManager.
+	 * 替代JDK9起不再可用的sun.reflect.Reflection, 兼容JDK8及以上
+	 */
+	@SuppressWarnings("removal")
+	private static final class CallerResolver extends SecurityManager {
+		static final CallerResolver INSTANCE = new CallerResolver();
+
+		// depth为0时是本类, 1为调用callerOf的方法所在的类, 2为其调用者
+		Class<?> callerOf(int depth) {
+			return getClassContext()[depth];
+		}
+	}
 }
@@ -0,0 +1,29 @@
+package bthulu.commons.combine.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 执行阻塞IO任务的线程池, Java 21及以上的实现, 每个任务一个虚拟线程.
+ *
+ * 与src/main/java中的实现保持相同的公有方法.
+ */
+public class IoExecutors {
+
+	private IoExecutors() {
+	}
+
+	/**
+	 * 创建执行阻塞IO任务的线程池, 线程名为<code>name-序号</code>
+	 */
+	public static ExecutorService newIoExecutor(String name) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+	}
+
+	/**
+	 * {@link #newIoExecutor(String)}创建的线程池是否以虚拟线程执行任务, 由运行时加载的实现决定, 与调用线程无关
+	 */
+	public static boolean usesVirtualThreads() {
+		return true;
+	}
+}
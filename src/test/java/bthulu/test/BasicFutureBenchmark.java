@@ -0,0 +1,146 @@
+package bthulu.test;
+
+import bthulu.commons.combine.concurrent.BasicFuture;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 对比{@link BasicFuture}与原先同步于this, 以wait/notifyAll唤醒的实现:
+ *
+ * 1. 多个线程等待同一个Future, 完成后全部线程被唤醒的耗时
+ *
+ * 2. 多个线程反复读取已完成的Future
+ */
+public class BasicFutureBenchmark {
+
+	private static final int WAITERS = 64;
+
+	private static final int ROUNDS = 2_000;
+
+	private static final int READS = 2_000_000;
+
+	public static void main(String[] args) throws Exception {
+		for (int i = 0; i < 2; i++) {
+			// 第一轮为预热
+			wakeup("synchronized", SynchronizedFuture::new, f -> ((SynchronizedFuture<Object>) f).completed("v"));
+			wakeup("BasicFuture", BasicFuture::new, f -> ((BasicFuture<Object>) f).completed("v"));
+			read("synchronized", new SynchronizedFuture<>(), f -> ((SynchronizedFuture<Object>) f).completed("v"));
+			read("BasicFuture", new BasicFuture<>(), f -> ((BasicFuture<Object>) f).completed("v"));
+		}
+	}
+
+	private static void wakeup(String name, Supplier<Future<Object>> factory, Consumer<Future<Object>> complete)
+			throws Exception {
+		AtomicLong wakeNanos = new AtomicLong();
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			Future<Object> future = factory.get();
+			CountDownLatch ready = new CountDownLatch(WAITERS);
+			CountDownLatch done = new CountDownLatch(WAITERS);
+			long[] completedAt = new long[1];
+			for (int i = 0; i < WAITERS; i++) {
+				Thread thread = new Thread(() -> {
+					ready.countDown();
+					try {
+						future.get();
+					} catch (InterruptedException | ExecutionException e) {
+						throw new IllegalStateException(e);
+					}
+					done.countDown();
+				});
+				thread.setDaemon(true);
+				thread.start();
+			}
+			ready.await();
+			completedAt[0] = System.nanoTime();
+			complete.accept(future);
+			done.await();
+			wakeNanos.addAndGet(System.nanoTime() - completedAt[0]);
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println(name + " 唤醒" + WAITERS + "个等待线程平均耗时:" + wakeNanos.get() / ROUNDS / 1000 + "us, 总耗时:"
+				+ TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+	}
+
+	private static void read(String name, Future<Object> future, Consumer<Future<Object>> complete)
+			throws Exception {
+		complete.accept(future);
+		int threads = Runtime.getRuntime().availableProcessors() * 2;
+		CountDownLatch done = new CountDownLatch(threads);
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int j = 0; j < READS / threads; j++) {
+						future.get();
+					}
+				} catch (InterruptedException | ExecutionException e) {
+					throw new IllegalStateException(e);
+				}
+				done.countDown();
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		System.out.println(name + " " + threads + "个线程读取已完成结果" + READS + "次耗时:"
+				+ TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+	}
+
+	/**
+	 * 原先的实现, 仅保留对比所需的部分
+	 */
+	static class SynchronizedFuture<T> implements Future<T> {
+
+		private volatile boolean completed;
+
+		private volatile T result;
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return completed;
+		}
+
+		@Override
+		public synchronized T get() throws InterruptedException {
+			while (!this.completed) {
+				wait();
+			}
+			return result;
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean completed(T result) {
+			synchronized (this) {
+				if (this.completed) {
+					return false;
+				}
+				this.completed = true;
+				this.result = result;
+				notifyAll();
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package bthulu.test;
+
+import bthulu.commons.combine.concurrent.BasicFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BasicFutureTest {
+
+	@Test
+	public void completesOnce() throws Exception {
+		CallbackFuture future = new CallbackFuture();
+		assertFalse(future.isDone());
+		assertTrue(future.completed("a"));
+		assertFalse(future.completed("b"));
+		assertFalse(future.failed(new IllegalStateException()));
+		assertFalse(future.cancel(true));
+		assertTrue(future.isDone());
+		assertFalse(future.isCancelled());
+		assertEquals("a", future.get());
+		assertEquals("a", future.get(0, TimeUnit.MILLISECONDS));
+		assertEquals("[completed:a]", future.events.toString());
+	}
+
+	@Test
+	public void failed() throws Exception {
+		CallbackFuture future = new CallbackFuture();
+		IllegalStateException exception = new IllegalStateException("failed");
+		assertTrue(future.failed(exception));
+		assertFalse(future.completed("a"));
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+		assertEquals("[failed:failed]", future.events.toString());
+	}
+
+	@Test
+	public void cancelled() throws Exception {
+		CallbackFuture future = new CallbackFuture();
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(future.isDone());
+		assertFalse(future.completed("a"));
+		try {
+			future.get();
+			fail();
+		} catch (CancellationException e) {
+			// expected
+		}
+		assertEquals("[cancelled]", future.events.toString());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void getTimesOut() throws Exception {
+		new BasicFuture<String>().get(10, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void getInterrupted() throws Exception {
+		BasicFuture<String> future = new BasicFuture<>();
+		Thread.currentThread().interrupt();
+		try {
+			future.get();
+			fail();
+		} catch (InterruptedException e) {
+			// expected
+		}
+		// 被中断的等待不影响之后的完成
+		future.completed("a");
+		assertEquals("a", future.get());
+	}
+
+	@Test
+	public void wakesAllWaiters() throws Exception {
+		BasicFuture<String> future = new BasicFuture<>();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			CountDownLatch started = new CountDownLatch(8);
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				boolean timed = i % 2 == 0;
+				results.add(executor.submit(() -> {
+					started.countDown();
+					return timed ? future.get(5, TimeUnit.SECONDS) : future.get();
+				}));
+			}
+			assertTrue(started.await(1, TimeUnit.SECONDS));
+			future.completed("a");
+			for (Future<String> result : results) {
+				assertEquals("a", result.get(1, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void listenersRunInOrder() {
+		BasicFuture<String> future = new BasicFuture<>();
+		List<String> calls = new ArrayList<>();
+		future.addListener((result, t) -> calls.add("1:" + result));
+		future.addListener((result, t) -> {
+			throw new IllegalStateException("ignored");
+		});
+		future.addListener((result, t) -> calls.add("2:" + result));
+		future.completed("a");
+		// 已完成时在当前线程立即执行
+		future.addListener((result, t) -> calls.add("3:" + result));
+		assertEquals("[1:a, 2:a, 3:a]", calls.toString());
+	}
+
+	@Test
+	public void listenerReceivesFailureAndCancellation() {
+		BasicFuture<String> failed = new BasicFuture<>();
+		BasicFuture<String> cancelled = new BasicFuture<>();
+		List<Throwable> errors = new ArrayList<>();
+		failed.addListener((result, t) -> errors.add(t));
+		cancelled.addListener((result, t) -> errors.add(t));
+		failed.failed(new IllegalStateException());
+		cancelled.cancel(true);
+		assertTrue(errors.get(0) instanceof IllegalStateException);
+		assertTrue(errors.get(1) instanceof CancellationException);
+	}
+
+	@Test
+	public void toCompletableFuture() throws Exception {
+		BasicFuture<String> future = new BasicFuture<>();
+		CompletableFuture<String> completable = future.toCompletableFuture();
+		future.completed("a");
+		assertEquals("a", completable.get());
+
+		BasicFuture<String> cancelled = new BasicFuture<>();
+		cancelled.toCompletableFuture().cancel(false);
+		assertTrue(cancelled.isCancelled());
+	}
+
+	@Test
+	public void fromCompletionStage() throws Exception {
+		CompletableFuture<String> stage = new CompletableFuture<>();
+		BasicFuture<String> future = BasicFuture.from(stage);
+		assertFalse(future.isDone());
+		stage.complete("a");
+		assertEquals("a", future.get());
+
+		IllegalStateException exception = new IllegalStateException();
+		BasicFuture<String> failed = BasicFuture.from(CompletableFuture.<String>supplyAsync(() -> {
+			throw exception;
+		}).thenApply(s -> s));
+		try {
+			failed.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+
+		// Error不包装, 直接作为ExecutionException的cause
+		CompletableFuture<String> error = new CompletableFuture<>();
+		error.completeExceptionally(new AssertionError("error"));
+		try {
+			BasicFuture.from(error).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+
+		CompletableFuture<String> cancelled = new CompletableFuture<>();
+		cancelled.cancel(false);
+		assertTrue(BasicFuture.from(cancelled).isCancelled());
+	}
+
+	@Test
+	public void concurrentCompletionHasOneWinner() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int round = 0; round < 100; round++) {
+				BasicFuture<Integer> future = new BasicFuture<>();
+				AtomicInteger winners = new AtomicInteger();
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<?>> tasks = new ArrayList<>();
+				for (int i = 0; i < 4; i++) {
+					int value = i;
+					tasks.add(executor.submit(() -> {
+						start.await();
+						if (future.completed(value)) {
+							winners.incrementAndGet();
+						}
+						return null;
+					}));
+				}
+				start.countDown();
+				for (Future<?> task : tasks) {
+					task.get(1, TimeUnit.SECONDS);
+				}
+				assertEquals(1, winners.get());
+				assertNotNull(future.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// 记录扩展点的调用
+	private static class CallbackFuture extends BasicFuture<String> {
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		protected void onCompleted(String result) {
+			events.add("completed:" + result);
+		}
+
+		@Override
+		protected void onFailed(Exception ex) {
+			events.add("failed:" + ex.getMessage());
+		}
+
+		@Override
+		protected void onCancelled() {
+			events.add("cancelled");
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.BatchCacheable;
+import bthulu.commons.combine.cache.BloomFilter;
+import bthulu.commons.combine.cache.Cacheable;
+import bthulu.commons.combine.cache.MemoryCacheAdvice;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link BatchCacheable}与单个查询共用缓存, 及布隆过滤器对批量和单个查询的过滤
+ */
+public class BatchCacheableTest {
+
+	private final AtomicInteger mgets = new AtomicInteger();
+
+	private final MemoryCacheAdvice advice = new MemoryCacheAdvice("batch", 1 << 20) {
+		@Override
+		protected List<String> mget(List<String> keys) {
+			mgets.incrementAndGet();
+			return super.mget(keys);
+		}
+	};
+
+	private final Repository target = new Repository();
+
+	private final Repository repository;
+
+	public BatchCacheableTest() {
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(advice);
+		repository = factory.getProxy();
+	}
+
+	@After
+	public void close() {
+		advice.getStore().close();
+	}
+
+	@Test
+	public void loadsOnlyMissingIds() {
+		assertEquals("item-1", repository.find(1L).getName());
+		assertEquals("item-2", repository.find(2L).getName());
+		List<Item> items = repository.findByIds(Arrays.asList(3L, 1L, 2L));
+		assertEquals(Arrays.asList(3L, 1L, 2L), ids(items));
+		assertEquals(Collections.singletonList(Collections.singletonList(3L)), target.batches);
+
+		// 批量查询写入的缓存同样被单个查询读取
+		assertEquals("item-3", repository.find(3L).getName());
+		assertEquals(Arrays.asList(1L, 2L), target.finds);
+	}
+
+	@Test
+	public void allHitsSkipMethod() {
+		repository.findByIds(Arrays.asList(1L, 2L));
+		assertEquals(Arrays.asList(1L, 2L), ids(repository.findByIds(Arrays.asList(1L, 2L))));
+		assertEquals(1, target.batches.size());
+	}
+
+	@Test
+	public void missingIdsCachedAsNull() {
+		assertEquals(Collections.singletonList(1L), ids(repository.findExisting(Arrays.asList(1L, -1L))));
+		assertEquals(Collections.singletonList(1L), ids(repository.findExisting(Arrays.asList(1L, -1L))));
+		assertEquals(1, target.batches.size());
+	}
+
+	@Test
+	public void bloomFilterDropsUnknownIds() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		filter.put("1");
+		filter.put("2");
+		advice.setBloomFilter("item", filter);
+		assertEquals(Arrays.asList(1L, 2L), ids(repository.findByIds(Arrays.asList(1L, 2L, 1000L))));
+		assertEquals(Collections.singletonList(Arrays.asList(1L, 2L)), target.batches);
+		assertEquals(1, mgets.get());
+
+		// 全部被过滤时既不读取缓存也不执行方法
+		assertTrue(repository.findByIds(Arrays.asList(1000L, 1001L)).isEmpty());
+		assertEquals(1, mgets.get());
+		assertEquals(1, target.batches.size());
+	}
+
+	@Test
+	public void bloomFilterReturnsEmptyOptional() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		filter.put("1");
+		advice.setBloomFilter("item", filter);
+		assertEquals(Optional.empty(), repository.findOptional(1000L));
+		assertEquals("item-1", repository.findOptional(1L).get().getName());
+		assertNull(repository.find(1000L));
+		assertEquals(Collections.singletonList(1L), target.finds);
+	}
+
+	private static List<Long> ids(Collection<Item> items) {
+		List<Long> ids = new ArrayList<>();
+		for (Item item : items) {
+			ids.add(item.getId());
+		}
+		return ids;
+	}
+
+	public static class Repository {
+		final List<Long> finds = Collections.synchronizedList(new ArrayList<>());
+		final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+		@Cacheable(value = "item", key = "#id")
+		public Item find(Long id) {
+			finds.add(id);
+			return new Item(id);
+		}
+
+		@Cacheable(value = "item", key = "#id")
+		public Optional<Item> findOptional(Long id) {
+			finds.add(id);
+			return Optional.of(new Item(id));
+		}
+
+		@BatchCacheable("item")
+		public List<Item> findByIds(Collection<Long> ids) {
+			batches.add(new ArrayList<>(ids));
+			List<Item> items = new ArrayList<>();
+			for (Long id : ids) {
+				items.add(new Item(id));
+			}
+			return items;
+		}
+
+		// 只返回id大于0的元素
+		@BatchCacheable(value = "existing", nullTimeout = 60)
+		public List<Item> findExisting(Collection<Long> ids) {
+			batches.add(new ArrayList<>(ids));
+			List<Item> items = new ArrayList<>();
+			for (Long id : ids) {
+				if (id > 0) {
+					items.add(new Item(id));
+				}
+			}
+			return items;
+		}
+	}
+
+	public static class Item {
+		private long id;
+		private String name;
+
+		public Item() {
+		}
+
+		Item(long id) {
+			this.id = id;
+			this.name = "item-" + id;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
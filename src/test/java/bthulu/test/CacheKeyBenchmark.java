@@ -0,0 +1,62 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.CacheKeyHasher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对比以StringBuilder拼接参数toString()与{@link CacheKeyHasher}散列参数生成缓存key的耗时及key长度
+ */
+public class CacheKeyBenchmark {
+
+	private static final int ITERATIONS = 200_000;
+
+	public static void main(String[] args) {
+		List<Long> ids = new ArrayList<>();
+		for (long i = 0; i < 200; i++) {
+			ids.add(100_000_000L + i);
+		}
+		Map<String, Object> query = new HashMap<>();
+		query.put("status", "ENABLED");
+		query.put("page", 3);
+		query.put("keyword", "cache key benchmark");
+		Object[][] cases = { { 42L }, { "tenant-1", 42L, true }, { ids }, { query, ids } };
+
+		for (Object[] arguments : cases) {
+			// 预热
+			run(arguments, ITERATIONS);
+			System.out.println("参数:" + arguments.length + "个, 拼接key长度:" + append(arguments).length() + ", 散列key长度:"
+					+ (CacheKeyHasher.hash(arguments).length() + 1));
+			run(arguments, ITERATIONS);
+		}
+	}
+
+	private static void run(Object[] arguments, int iterations) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink += append(arguments).length();
+		}
+		long appendNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink += CacheKeyHasher.hash(arguments).length();
+		}
+		long hashNanos = System.nanoTime() - start;
+		System.out.println("  StringBuilder: " + appendNanos / iterations + "ns/op, CacheKeyHasher: "
+				+ hashNanos / iterations + "ns/op (" + sink + ")");
+	}
+
+	// 与RedisCacheAdvice未指定key时的拼接方式相同
+	private static String append(Object[] arguments) {
+		StringBuilder cacheKey = new StringBuilder();
+		for (Object arg : arguments) {
+			cacheKey.append(":").append(arg);
+		}
+		return cacheKey.toString();
+	}
+}
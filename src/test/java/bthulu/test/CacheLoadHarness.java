@@ -0,0 +1,183 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.CacheEvict;
+import bthulu.commons.combine.cache.CacheStats;
+import bthulu.commons.combine.cache.Cacheable;
+import bthulu.commons.combine.cache.MemoryCacheAdvice;
+import bthulu.commons.combine.concurrent.LatencyHistogram;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 以{@link MemoryCacheAdvice}压测缓存切面, 通过Spring AOP代理调用doCache/doEvict, 不依赖Redis.
+ *
+ * 参数依次为: 线程数 key个数 持续秒数 存储延迟(微秒) 方法执行耗时(毫秒) 删除比例(%) 是否合并请求(sync), 均可省略.
+ * 输出吞吐量, 命中率, 方法执行次数, 同一key的最大并发执行数(缓存击穿)及调用耗时分布.
+ */
+public class CacheLoadHarness {
+
+	public static void main(String[] args) throws InterruptedException {
+		int threads = intArg(args, 0, 32);
+		int keys = intArg(args, 1, 1000);
+		int seconds = intArg(args, 2, 10);
+		long latencyMicros = intArg(args, 3, 200);
+		long loadMillis = intArg(args, 4, 20);
+		int evictPercent = intArg(args, 5, 1);
+		boolean sync = args.length > 6 ? Boolean.parseBoolean(args[6]) : true;
+
+		LatencyAdvice advice = new LatencyAdvice(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+		ItemRepository target = new ItemRepository(loadMillis);
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(advice);
+		ItemRepository repository = factory.getProxy();
+
+		System.out.println("threads=" + threads + ", keys=" + keys + ", seconds=" + seconds + ", latency="
+				+ latencyMicros + "us, load=" + loadMillis + "ms, evict=" + evictPercent + "%, sync=" + sync);
+		LatencyHistogram latency = new LatencyHistogram();
+		LongAdder operations = new LongAdder();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					start.await();
+					while (System.nanoTime() < deadline) {
+						long id = skewed(random, keys);
+						long begin = System.nanoTime();
+						if (random.nextInt(100) < evictPercent) {
+							repository.update(id);
+						} else if (sync) {
+							repository.findSync(id);
+						} else {
+							repository.find(id);
+						}
+						latency.record(System.nanoTime() - begin);
+						operations.increment();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}, "load-" + i);
+			thread.start();
+		}
+		start.countDown();
+		done.await();
+
+		LatencyHistogram.Snapshot snapshot = latency.snapshot();
+		System.out.println("ops/s: " + operations.sum() / seconds);
+		for (Map.Entry<String, CacheStats.Snapshot> entry : advice.getCacheStats().entrySet()) {
+			System.out.println(entry.getValue());
+		}
+		System.out.println("loads: " + target.loads.sum() + ", max concurrent loads of one key: "
+				+ target.maxConcurrentLoads.get());
+		System.out.println("latency: mean=" + micros(snapshot.getMeanNanos()) + "us, p50="
+				+ micros(snapshot.getQuantileNanos(0.5)) + "us, p99=" + micros(snapshot.getQuantileNanos(0.99))
+				+ "us, max=" + micros(snapshot.getMaxNanos()) + "us");
+		System.out.println("store: size=" + advice.getStore().size() + ", weight=" + advice.getStore().weight());
+		advice.getStore().close();
+	}
+
+	// 近似zipf分布, 小编号的key访问更频繁
+	private static long skewed(ThreadLocalRandom random, int keys) {
+		double r = random.nextDouble();
+		return (long) (keys * r * r * r);
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	private static int intArg(String[] args, int index, int defaultValue) {
+		return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+	}
+
+	/**
+	 * 每次存储操作前等待指定时间, 模拟网络往返
+	 */
+	static class LatencyAdvice extends MemoryCacheAdvice {
+		private final long latencyNanos;
+
+		LatencyAdvice(long latencyNanos) {
+			super("load", 256L * 1024 * 1024);
+			this.latencyNanos = latencyNanos;
+		}
+
+		@Override
+		protected String get(String key) {
+			pause();
+			return super.get(key);
+		}
+
+		@Override
+		protected void setex(String key, long seconds, String value) {
+			pause();
+			super.setex(key, seconds, value);
+		}
+
+		@Override
+		protected void del(String key) {
+			pause();
+			super.del(key);
+		}
+
+		private void pause() {
+			if (latencyNanos > 0) {
+				LockSupport.parkNanos(latencyNanos);
+			}
+		}
+	}
+
+	public static class ItemRepository {
+		private final long loadMillis;
+		final LongAdder loads = new LongAdder();
+		final AtomicInteger maxConcurrentLoads = new AtomicInteger();
+		private final Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+
+		public ItemRepository() {
+			this(0);
+		}
+
+		ItemRepository(long loadMillis) {
+			this.loadMillis = loadMillis;
+		}
+
+		@Cacheable(value = "item", key = "#id")
+		public String find(long id) {
+			return load(id);
+		}
+
+		@Cacheable(value = "item", key = "#id", sync = true)
+		public String findSync(long id) {
+			return load(id);
+		}
+
+		@CacheEvict(value = "item", key = "#id")
+		public void update(long id) {
+		}
+
+		private String load(long id) {
+			loads.increment();
+			AtomicInteger concurrent = running.computeIfAbsent(id, k -> new AtomicInteger());
+			maxConcurrentLoads.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			try {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(loadMillis));
+				return "item-" + id;
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package bthulu.test;
+
+import bthulu.commons.combine.concurrent.InstrumentedThreadPool;
+import bthulu.commons.combine.concurrent.ThreadPoolBuilder;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedThreadPoolTest {
+
+	@Test
+	public void callerRunsAreNotRejections() throws Exception {
+		InstrumentedThreadPool pool = ThreadPoolBuilder.named("caller-runs").coreSize(1).maxSize(1).queueSize(1)
+				.rejectHandler(new ThreadPoolExecutor.CallerRunsPolicy()).build();
+		CountDownLatch release = new CountDownLatch(1);
+		pool.execute(() -> await(release));
+		pool.execute(() -> {
+		});
+		Thread[] ranIn = new Thread[1];
+		pool.execute(() -> ranIn[0] = Thread.currentThread());
+		assertSame(Thread.currentThread(), ranIn[0]);
+		assertEquals(1, pool.getCallerRunsCount());
+		assertEquals(0, pool.getRejectedCount());
+		release.countDown();
+		assertTrue(pool.shutdownGracefully(1000));
+	}
+
+	@Test
+	public void abortIsRejection() throws Exception {
+		InstrumentedThreadPool pool = ThreadPoolBuilder.named("abort").coreSize(1).maxSize(1).queueSize(1)
+				.rejectHandler(new ThreadPoolExecutor.AbortPolicy()).build();
+		CountDownLatch release = new CountDownLatch(1);
+		pool.execute(() -> await(release));
+		pool.execute(() -> {
+		});
+		try {
+			pool.execute(() -> {
+			});
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals(1, pool.getRejectedCount());
+			assertEquals(0, pool.getCallerRunsCount());
+		}
+		release.countDown();
+		assertTrue(pool.shutdownGracefully(1000));
+		assertEquals(2, pool.getCompletedCount());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
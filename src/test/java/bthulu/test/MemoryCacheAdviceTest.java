@@ -0,0 +1,261 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.CacheEvict;
+import bthulu.commons.combine.cache.Cacheable;
+import bthulu.commons.combine.cache.MemoryCacheAdvice;
+import bthulu.commons.combine.cache.CacheStats;
+import bthulu.commons.combine.cache.MemoryCacheStore;
+import bthulu.commons.combine.cache.OffHeapCacheStore;
+import bthulu.commons.combine.cache.SmileCacheCodec;
+import bthulu.commons.combine.concurrent.CircuitBreaker;
+import bthulu.commons.combine.concurrent.ThreadUtil;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 通过Spring AOP代理调用{@link MemoryCacheAdvice}, 验证缓存切面的行为
+ */
+public class MemoryCacheAdviceTest {
+
+	private final MemoryCacheAdvice advice = new MemoryCacheAdvice("test", 1 << 20);
+
+	@After
+	public void close() {
+		advice.getStore().close();
+	}
+
+	@Test
+	public void cachesUntilEvicted() {
+		Repository repository = proxy(new Repository());
+		assertEquals("item-1-1", repository.find(1));
+		assertEquals("item-1-1", repository.find(1));
+		repository.evict(1);
+		assertEquals("item-1-2", repository.find(1));
+	}
+
+	@Test
+	public void evictAllEntriesWithNamespaceVersion() {
+		advice.enableNamespaceVersion(0);
+		Repository repository = proxy(new Repository());
+		assertEquals("item-1-1", repository.find(1));
+		repository.evictAll();
+		assertEquals("item-1-2", repository.find(1));
+		// 版本号每次都重新读取, 旧版本的缓存不能再被读到
+		assertEquals("item-1-2", repository.find(1));
+	}
+
+	@Test
+	public void evictAllEntriesWithCodecAndNamespaceVersion() {
+		advice.setCacheCodec(new SmileCacheCodec());
+		advice.enableNamespaceVersion(0);
+		Repository repository = proxy(new Repository());
+		assertEquals("item-1-1", repository.find(1));
+		repository.evictAll();
+		assertEquals("item-1-2", repository.find(1));
+		assertEquals("item-1-2", repository.find(1));
+		repository.evictAll();
+		assertEquals("item-1-3", repository.find(1));
+	}
+
+	@Test
+	public void singleFlight() throws Exception {
+		Repository target = new Repository();
+		Repository repository = proxy(target);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> repository.findSync(1)));
+			}
+			assertTrue(target.entered.await(1, TimeUnit.SECONDS));
+			// 等待其余线程进入合并等待
+			ThreadUtil.sleep(100);
+			target.release.countDown();
+			for (Future<String> result : results) {
+				assertEquals("item-1-1", result.get(1, TimeUnit.SECONDS));
+			}
+			assertEquals(1, target.loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void singleFlightTimeout() throws Exception {
+		Repository target = new Repository();
+		Repository repository = proxy(target);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> leader = executor.submit(() -> repository.findSyncTimeout(1));
+			assertTrue(target.entered.await(1, TimeUnit.SECONDS));
+			// 等待超过syncTimeout后自行执行方法
+			assertEquals("item-1-2", repository.findSyncTimeout(1));
+			target.release.countDown();
+			assertEquals("item-1-1", leader.get(1, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void singleFlightAsync() throws Exception {
+		Repository target = new Repository();
+		Repository repository = proxy(target);
+		CompletableFuture<String> first = repository.findSyncAsync(1);
+		CompletableFuture<String> second = repository.findSyncAsync(1);
+		assertFalse(second.isDone());
+		target.pending.complete("item-1");
+		assertEquals("item-1", first.get(1, TimeUnit.SECONDS));
+		assertEquals("item-1", second.get(1, TimeUnit.SECONDS));
+		assertEquals(1, target.loads.get());
+	}
+
+	@Test
+	public void countsHitsPerTier() {
+		advice.setOffHeapStore(new OffHeapCacheStore(1 << 16, 1 << 12));
+		Repository repository = proxy(new Repository());
+		assertEquals("item-1-1", repository.findOffHeap(1));
+		assertEquals("item-1-1", repository.findOffHeap(1));
+		assertEquals("item-1-1", repository.findOffHeap(1));
+		CacheStats.Snapshot stats = advice.getCacheStats().get("item");
+		assertEquals(1, stats.getMissCount());
+		assertEquals(0, stats.getHitCount());
+		assertEquals(2, stats.getOffHeapHitCount());
+		assertEquals(2.0 / 3, stats.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void storeReadsCountersAsBytes() {
+		MemoryCacheStore store = advice.getStore();
+		assertEquals(1, store.incr("counter"));
+		assertEquals(2, store.incr("counter"));
+		assertArrayEquals("2".getBytes(StandardCharsets.UTF_8), store.getBytes("counter"));
+		store.setex("bytes", 60, new byte[]{1, 2});
+		assertArrayEquals(new byte[]{1, 2}, store.getBytes("bytes"));
+		assertNull(store.getBytes("missing"));
+	}
+
+	@Test
+	public void asyncLoadRunsOffReadThread() throws Exception {
+		MemoryCacheAdvice advice = new MemoryCacheAdvice("async", 1 << 20) {
+			@Override
+			protected CompletableFuture<String> getAsync(String key) {
+				// 模拟缓存客户端在其IO线程中完成读取
+				CompletableFuture<String> future = new CompletableFuture<>();
+				Thread io = new Thread(() -> {
+					ThreadUtil.sleep(20);
+					future.complete(get(key));
+				}, "redis-io");
+				io.start();
+				return future;
+			}
+		};
+		Repository target = new Repository();
+		Repository repository = proxy(advice, target);
+		assertEquals("item-1-1", repository.findAsync(1).get(1, TimeUnit.SECONDS));
+		assertTrue(target.loadThread, target.loadThread.startsWith("cache-async"));
+		assertEquals("item-1-1", repository.findAsync(1).get(1, TimeUnit.SECONDS));
+		assertEquals(1, target.loads.get());
+	}
+
+	@Test
+	public void asyncReadThrowingSynchronously() throws Exception {
+		MemoryCacheAdvice advice = new MemoryCacheAdvice("failing", 1 << 20) {
+			@Override
+			protected CompletableFuture<String> getAsync(String key) {
+				throw new IllegalStateException("connection refused");
+			}
+		};
+		CircuitBreaker breaker = advice.enableCircuitBreaker(1, 60_000);
+		Repository repository = proxy(advice, new Repository());
+		CompletableFuture<String> future = repository.findAsync(1);
+		assertEquals("item-1-1", future.get(1, TimeUnit.SECONDS));
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(1, advice.getCacheStats().get("item").getErrorCount());
+		// 熔断期间跳过缓存, 仍返回CompletionStage
+		assertEquals("item-1-2", repository.findAsync(1).get(1, TimeUnit.SECONDS));
+	}
+
+	private <T> T proxy(T target) {
+		return proxy(advice, target);
+	}
+
+	private static <T> T proxy(MemoryCacheAdvice advice, T target) {
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(advice);
+		return factory.getProxy();
+	}
+
+	public static class Repository {
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CompletableFuture<String> pending = new CompletableFuture<>();
+		volatile String loadThread;
+
+		@Cacheable(value = "item", key = "#id")
+		public String find(long id) {
+			return "item-" + id + "-" + loads.incrementAndGet();
+		}
+
+		@Cacheable(value = "item", key = "'sync:' + #id", sync = true)
+		public String findSync(long id) throws InterruptedException {
+			return blockingLoad(id);
+		}
+
+		@Cacheable(value = "item", key = "'syncTimeout:' + #id", sync = true, syncTimeout = 50)
+		public String findSyncTimeout(long id) throws InterruptedException {
+			return blockingLoad(id);
+		}
+
+		@Cacheable(value = "item", key = "'syncAsync:' + #id", sync = true)
+		public CompletableFuture<String> findSyncAsync(long id) {
+			loads.incrementAndGet();
+			return pending;
+		}
+
+		// 首次调用阻塞至release, 之后的调用直接返回
+		private String blockingLoad(long id) throws InterruptedException {
+			int load = loads.incrementAndGet();
+			if (load == 1) {
+				entered.countDown();
+				release.await(5, TimeUnit.SECONDS);
+			}
+			return "item-" + id + "-" + load;
+		}
+
+		@Cacheable(value = "item", key = "'offHeap:' + #id", offHeapTimeout = 60)
+		public String findOffHeap(long id) {
+			return "item-" + id + "-" + loads.incrementAndGet();
+		}
+
+		@Cacheable(value = "item", key = "'async:' + #id")
+		public CompletableFuture<String> findAsync(long id) {
+			loadThread = Thread.currentThread().getName();
+			return CompletableFuture.completedFuture("item-" + id + "-" + loads.incrementAndGet());
+		}
+
+		@CacheEvict(value = "item", key = "#id")
+		public void evict(long id) {
+		}
+
+		@CacheEvict(value = "item", allEntries = true)
+		public void evictAll() {
+		}
+	}
+}
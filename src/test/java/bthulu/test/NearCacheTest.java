@@ -0,0 +1,90 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.NearCache;
+import bthulu.commons.combine.concurrent.ThreadUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NearCacheTest {
+
+	@Test
+	public void boundedSize() {
+		NearCache cache = new NearCache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("k" + i, i, 60_000);
+		}
+		assertTrue(String.valueOf(cache.size()), cache.size() <= 100);
+	}
+
+	@Test
+	public void frequentKeysSurviveScan() {
+		NearCache cache = new NearCache(100);
+		for (int i = 0; i < 50; i++) {
+			cache.put("hot" + i, i, 60_000);
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50; i++) {
+				assertEquals(i, cache.get("hot" + i));
+			}
+		}
+		// 只访问一次的扫描不能挤出访问频率更高的元素
+		for (int i = 0; i < 10_000; i++) {
+			cache.put("scan" + i, i, 60_000);
+		}
+		for (int i = 0; i < 50; i++) {
+			assertEquals("hot" + i, i, cache.get("hot" + i));
+		}
+		assertTrue(cache.size() <= 100);
+	}
+
+	@Test
+	public void newHotKeyIsAdmitted() {
+		NearCache cache = new NearCache(100);
+		for (int i = 0; i < 100; i++) {
+			cache.put("old" + i, i, 60_000);
+		}
+		// 未缓存时的读取同样记录频率, 新的热点写入后能替换主LRU中访问少的元素
+		for (int round = 0; round < 5; round++) {
+			assertNull(cache.get("new"));
+		}
+		cache.put("new", "value", 60_000);
+		cache.put("other", "value", 60_000);
+		assertEquals("value", cache.get("new"));
+		assertTrue(cache.size() <= 100);
+	}
+
+	@Test
+	public void expiresLazily() {
+		NearCache cache = new NearCache(10);
+		cache.put("a", "1", 1);
+		cache.put("b", "2", 60_000);
+		ThreadUtil.sleep(10);
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void ignoresNullAndNonPositiveTtl() {
+		NearCache cache = new NearCache(10);
+		cache.put("a", null, 60_000);
+		cache.put("b", "2", 0);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void invalidate() {
+		NearCache cache = new NearCache(10);
+		cache.put("a", "1", 60_000);
+		cache.put("b", "2", 60_000);
+		cache.invalidate("a");
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		cache.invalidateAll();
+		assertNull(cache.get("b"));
+		assertEquals(0, cache.size());
+		cache.put("c", "3", 60_000);
+		assertEquals("3", cache.get("c"));
+	}
+}
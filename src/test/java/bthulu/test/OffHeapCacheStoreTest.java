@@ -0,0 +1,136 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.OffHeapCacheStore;
+import bthulu.commons.combine.concurrent.ThreadUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCacheStoreTest {
+
+	// 记录头8字节 + 2字节key + 54字节值, 每段恰好4条记录
+	private static final int SEGMENT_BYTES = 256;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void putGetRemove() {
+		OffHeapCacheStore store = new OffHeapCacheStore(1 << 16, 1 << 12);
+		assertTrue(store.put("a", bytes("1"), 0));
+		assertArrayEquals(bytes("1"), store.get("a"));
+		assertTrue(store.put("a", bytes("2"), 0));
+		assertArrayEquals(bytes("2"), store.get("a"));
+		assertEquals(1, store.size());
+		assertTrue(store.remove("a"));
+		assertFalse(store.remove("a"));
+		assertNull(store.get("a"));
+		assertEquals(2, store.getHitCount());
+		assertEquals(1, store.getMissCount());
+	}
+
+	@Test
+	public void expires() {
+		OffHeapCacheStore store = new OffHeapCacheStore(1 << 16, 1 << 12);
+		store.put("a", bytes("1"), 1);
+		store.put("b", bytes("2"), 60_000);
+		ThreadUtil.sleep(10);
+		assertNull(store.get("a"));
+		assertArrayEquals(bytes("2"), store.get("b"));
+	}
+
+	@Test
+	public void rejectsRecordLargerThanSegment() {
+		OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_BYTES * 2, SEGMENT_BYTES);
+		store.put("a", bytes("1"), 0);
+		assertFalse(store.put("a", new byte[SEGMENT_BYTES], 0));
+		assertEquals(1, store.getRejectedCount());
+		// 旧值同时删除, 不能读到过时的值
+		assertNull(store.get("a"));
+	}
+
+	@Test
+	public void compactsSparseSegment() {
+		OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_BYTES * 2, SEGMENT_BYTES);
+		for (int i = 0; i < 8; i++) {
+			assertTrue(store.put("k" + i, value(i), 0));
+		}
+		store.remove("k0");
+		store.remove("k1");
+		store.remove("k2");
+		// 两段均已写满, 第一段存活比例1/4, 整理后继续写入
+		assertTrue(store.put("k8", value(8), 0));
+		assertEquals(1, store.getCompactionCount());
+		assertEquals(0, store.getEvictionCount());
+		for (int i = 3; i <= 8; i++) {
+			assertArrayEquals("k" + i, value(i), store.get("k" + i));
+		}
+		assertEquals(6 * 64, store.getLiveBytes());
+	}
+
+	@Test
+	public void evictsOldestDenseSegment() {
+		OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_BYTES * 2, SEGMENT_BYTES);
+		for (int i = 0; i < 9; i++) {
+			assertTrue(store.put("k" + i, value(i), 0));
+		}
+		assertEquals(0, store.getCompactionCount());
+		assertEquals(4, store.getEvictionCount());
+		for (int i = 0; i < 4; i++) {
+			assertNull(store.get("k" + i));
+		}
+		for (int i = 4; i < 9; i++) {
+			assertArrayEquals(value(i), store.get("k" + i));
+		}
+		assertEquals(2L * SEGMENT_BYTES, store.getAllocatedBytes());
+	}
+
+	@Test
+	public void reloadsSnapshot() throws Exception {
+		File file = new File(folder.getRoot(), "off-heap.snapshot");
+		OffHeapCacheStore store = new OffHeapCacheStore(1 << 16, 1 << 12);
+		store.put("a", bytes("1"), 60_000);
+		store.put("b", bytes("2"), 0);
+		store.put("expired", bytes("3"), 1);
+		store.put("removed", bytes("4"), 0);
+		store.remove("removed");
+		ThreadUtil.sleep(10);
+		store.writeSnapshot(file);
+
+		OffHeapCacheStore restarted = new OffHeapCacheStore(1 << 16, 1 << 12);
+		restarted.enableSnapshot(file);
+		assertArrayEquals(bytes("1"), restarted.get("a"));
+		assertArrayEquals(bytes("1"), restarted.get("a"));
+		assertEquals(1, restarted.getWarmedCount());
+		assertNull(restarted.get("expired"));
+		assertNull(restarted.get("removed"));
+
+		// 快照中未载入的值被新写入或删除覆盖
+		restarted.put("b", bytes("new"), 0);
+		assertArrayEquals(bytes("new"), restarted.get("b"));
+		assertEquals(1, restarted.getWarmedCount());
+
+		// 再次写入快照时包含已载入及新写入的值
+		restarted.writeSnapshot(file);
+		OffHeapCacheStore again = new OffHeapCacheStore(1 << 16, 1 << 12);
+		again.enableSnapshot(file);
+		assertArrayEquals(bytes("1"), again.get("a"));
+		assertArrayEquals(bytes("new"), again.get("b"));
+	}
+
+	private static byte[] value(int i) {
+		byte[] value = new byte[54];
+		Arrays.fill(value, (byte) i);
+		return value;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,138 @@
+package bthulu.test;
+
+import bthulu.commons.combine.concurrent.RateLimiter;
+import bthulu.commons.combine.concurrent.SlidingWindowRateLimiter;
+import bthulu.commons.combine.concurrent.TokenBucketRateLimiter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+	@Test
+	public void tokenBucketBurst() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10);
+		// 满桶10个令牌, 第11个许可的耗时推迟到之后的请求
+		int acquired = acquireAll(limiter, 100);
+		assertTrue(String.valueOf(acquired), acquired >= 11 && acquired <= 12);
+		assertEquals(100 - acquired, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void tokenBucketTimedAcquireWaits() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20);
+		acquireAll(limiter, 100);
+		long start = System.nanoTime();
+		assertTrue(limiter.tryAcquire(1, 1, TimeUnit.SECONDS));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 20);
+
+		// 超时时间内不可能获取到时立即返回
+		start = System.nanoTime();
+		assertFalse(limiter.tryAcquire(1, 1, TimeUnit.MILLISECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 20);
+	}
+
+	@Test
+	public void tokenBucketStableRate() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(50);
+		acquireAll(limiter, 100);
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire(1, 1, TimeUnit.SECONDS));
+		}
+		// 桶已空, 10个许可至少需要9个稳定间隔
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 160 && elapsedMillis < 1000);
+	}
+
+	@Test
+	public void tokenBucketWarmup() {
+		TokenBucketRateLimiter cold = new TokenBucketRateLimiter(10, 1000);
+		// 冷状态下首个许可之后的间隔为稳定间隔的3倍
+		assertEquals(1, acquireAll(cold, 100));
+		long start = System.nanoTime();
+		assertTrue(cold.tryAcquire(1, 1, TimeUnit.SECONDS));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 200);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tokenBucketRejectsInvalidRate() {
+		new TokenBucketRateLimiter(0);
+	}
+
+	@Test
+	public void slidingWindowLimit() {
+		SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(5, 10_000);
+		assertEquals(5, acquireAll(limiter, 100));
+		assertEquals(5, limiter.getWindowCount());
+		assertEquals(95, limiter.getRejectedCount());
+		assertFalse(limiter.tryAcquire(6));
+	}
+
+	@Test
+	public void slidingWindowSlides() {
+		SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(5, 200, 10);
+		assertTrue(limiter.tryAcquire(5));
+		long start = System.nanoTime();
+		// 超时时间内不可能获取到时立即返回
+		assertFalse(limiter.tryAcquire(1, 10, TimeUnit.MILLISECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10);
+		// 等待到首个时间片滑出窗口
+		assertTrue(limiter.tryAcquire(1, 1, TimeUnit.SECONDS));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 150 && elapsedMillis < 1000);
+		assertTrue(limiter.getWindowCount() <= 5);
+	}
+
+	@Test
+	public void limitersNeverOverIssueConcurrently() throws Exception {
+		assertEquals(100, acquireConcurrently(new SlidingWindowRateLimiter(100, 60_000)));
+		// 满桶100个令牌加推迟耗时的1个, 另有执行期间新生成的少量令牌
+		int acquired = acquireConcurrently(new TokenBucketRateLimiter(100));
+		assertTrue(String.valueOf(acquired), acquired >= 101 && acquired <= 110);
+	}
+
+	private static int acquireAll(RateLimiter limiter, int attempts) {
+		int acquired = 0;
+		for (int i = 0; i < attempts; i++) {
+			if (limiter.tryAcquire()) {
+				acquired++;
+			}
+		}
+		return acquired;
+	}
+
+	private static int acquireConcurrently(RateLimiter limiter) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			AtomicInteger acquired = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				tasks.add(executor.submit(() -> {
+					start.await();
+					acquired.addAndGet(acquireAll(limiter, 1000));
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> task : tasks) {
+				task.get(5, TimeUnit.SECONDS);
+			}
+			return acquired.get();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
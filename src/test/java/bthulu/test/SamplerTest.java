@@ -0,0 +1,112 @@
+package bthulu.test;
+
+import bthulu.commons.combine.concurrent.Sampler;
+import bthulu.commons.combine.concurrent.ThreadUtil;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SamplerTest {
+
+	@Test
+	public void fixedPercent() {
+		assertTrue(Sampler.create(100D).select());
+		assertFalse(Sampler.create(0D).select());
+		Sampler sampler = Sampler.create(30D);
+		int selected = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (sampler.select()) {
+				selected++;
+			}
+		}
+		assertEquals(30_000, selected, 1_500);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidPercent() {
+		Sampler.create(101D);
+	}
+
+	@Test
+	public void rateLimitedCapsPerSecond() {
+		Sampler sampler = Sampler.createRateLimited(100);
+		long start = System.nanoTime();
+		int selected = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (sampler.select()) {
+				selected++;
+			}
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(selected > 0);
+		if (elapsedMillis < 100) {
+			// 仍在第一个时间片内, 最多采样每秒的1/10
+			assertTrue(String.valueOf(selected), selected <= 10);
+		}
+		assertTrue(String.valueOf(selected), selected <= 100 * (elapsedMillis / 1000 + 1));
+	}
+
+	@Test
+	public void rateLimitedSpreadsOverSecond() {
+		Sampler sampler = Sampler.createRateLimited(100);
+		int selected = 0;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(550);
+		while (System.nanoTime() < deadline) {
+			if (sampler.select()) {
+				selected++;
+			}
+		}
+		// 前550毫秒覆盖5到6个时间片, 累计上限为50到60次
+		assertTrue(String.valueOf(selected), selected >= 50 && selected <= 60);
+	}
+
+	@Test
+	public void adaptiveFollowsTarget() {
+		Sampler.AdaptiveSampler sampler = Sampler.createAdaptive(100, 20);
+		assertEquals(1, sampler.getProbability(), 0);
+		// 远高于目标速率时采样率降低
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+		while (System.nanoTime() < deadline) {
+			sampler.select();
+		}
+		assertTrue(String.valueOf(sampler.getProbability()), sampler.getProbability() < 0.5);
+
+		// 低于目标速率时, 移动平均每次调整减半, 逐步恢复为全部采样
+		for (int i = 0; i < 60 && sampler.getProbability() < 1; i++) {
+			ThreadUtil.sleep(25);
+			sampler.select();
+		}
+		assertEquals(1, sampler.getProbability(), 0);
+	}
+
+	@Test
+	public void hashBasedIsDeterministic() {
+		Sampler.HashSampler sampler = Sampler.createHashBased(10);
+		Sampler.HashSampler other = Sampler.createHashBased(10);
+		int selected = 0;
+		for (long id = 0; id < 100_000; id++) {
+			boolean select = sampler.select(id);
+			assertEquals(select, sampler.select(id));
+			assertEquals(select, other.select(id));
+			assertEquals(sampler.select("trace-" + id), other.select("trace-" + id));
+			if (select) {
+				selected++;
+			}
+		}
+		assertEquals(10_000, selected, 600);
+	}
+
+	@Test
+	public void hashBasedBounds() {
+		Sampler.HashSampler always = Sampler.createHashBased(100);
+		Sampler.HashSampler never = Sampler.createHashBased(0);
+		for (long id = 0; id < 1000; id++) {
+			assertTrue(always.select(id));
+			assertFalse(never.select(id));
+			assertTrue(always.select(String.valueOf(id)));
+			assertFalse(never.select(String.valueOf(id)));
+		}
+	}
+}
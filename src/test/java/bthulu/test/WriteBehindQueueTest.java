@@ -0,0 +1,152 @@
+package bthulu.test;
+
+import bthulu.commons.combine.cache.WriteBehindQueue;
+import bthulu.commons.combine.concurrent.ThreadUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindQueueTest {
+
+	// 每次批量写入的记录, 格式为 超时秒数=key-value
+	private final List<String> flushes = new ArrayList<>();
+
+	private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+	// 首次写入阻塞至release, 使之后入队的元素在同一批次中写入
+	private final CountDownLatch firstFlush = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private WriteBehindQueue<String> queue;
+
+	@After
+	public void close() {
+		release.countDown();
+		if (queue != null) {
+			queue.close();
+		}
+	}
+
+	@Test
+	public void batchesGroupedBySecondsKeepLastWrite() throws Exception {
+		queue = newQueue(10, 100, 0);
+		blockWorker();
+		queue.offer("a", 10, "1");
+		queue.offer("b", 10, "1");
+		queue.offer("a", 10, "2");
+		queue.offer("c", 20, "1");
+		release.countDown();
+		await(() -> queue.getWritten() == 4);
+		synchronized (flushes) {
+			assertEquals("[60={first=0}, 10={a=2, b=1}, 20={c=1}]", flushes.toString());
+		}
+		assertEquals("2", cache.get("a"));
+		assertEquals(5, queue.getEnqueued());
+	}
+
+	@Test
+	public void batchSizeLimitsEachFlush() throws Exception {
+		queue = newQueue(10, 2, 0);
+		blockWorker();
+		for (int i = 0; i < 5; i++) {
+			queue.offer("k" + i, 10, String.valueOf(i));
+		}
+		release.countDown();
+		await(() -> queue.getWritten() == 6);
+		synchronized (flushes) {
+			assertEquals("[60={first=0}, 10={k0=0, k1=1}, 10={k2=2, k3=3}, 10={k4=4}]", flushes.toString());
+		}
+	}
+
+	@Test
+	public void invalidateSkipsEarlierWrites() throws Exception {
+		queue = newQueue(10, 100, 0);
+		blockWorker();
+		queue.offer("a", 10, "old");
+		queue.offer("b", 10, "kept");
+		queue.invalidate("a");
+		release.countDown();
+		await(() -> queue.getWritten() == 2);
+		assertEquals(1, queue.getSkipped());
+		assertNull(cache.get("a"));
+		assertEquals("kept", cache.get("b"));
+
+		// 删除之后入队的新值正常写入
+		queue.offer("a", 10, "new");
+		await(() -> queue.getWritten() == 3);
+		assertEquals("new", cache.get("a"));
+	}
+
+	@Test
+	public void dropsWhenFull() throws Exception {
+		queue = newQueue(1, 100, 0);
+		blockWorker();
+		assertTrue(queue.offer("a", 10, "1"));
+		assertFalse(queue.offer("b", 10, "1"));
+		assertEquals(1, queue.getDropped());
+		assertEquals(1, queue.pending());
+	}
+
+	@Test
+	public void closeFlushesPending() throws Exception {
+		queue = newQueue(100, 10, 0);
+		for (int i = 0; i < 50; i++) {
+			assertTrue(queue.offer("k" + i, 10, String.valueOf(i)));
+		}
+		queue.close();
+		assertEquals(50, queue.getWritten());
+		assertEquals(0, queue.pending());
+		assertEquals(50, cache.size());
+	}
+
+	@Test
+	public void flushFailureIsCounted() throws Exception {
+		queue = new WriteBehindQueue<>(10, 10, 0, (seconds, keyValues) -> {
+			throw new IllegalStateException("redis down");
+		});
+		queue.offer("a", 10, "1");
+		await(() -> queue.getFailed() == 1);
+		assertEquals(0, queue.getWritten());
+	}
+
+	private WriteBehindQueue<String> newQueue(int capacity, int batchSize, long offerTimeoutMillis) {
+		return new WriteBehindQueue<>(capacity, batchSize, offerTimeoutMillis, (seconds, keyValues) -> {
+			synchronized (flushes) {
+				flushes.add(seconds + "=" + keyValues);
+			}
+			if (keyValues.containsKey("first")) {
+				firstFlush.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			cache.putAll(keyValues);
+		});
+	}
+
+	// 后台线程写入首个元素时阻塞, 之后入队的元素在release后一起写入
+	private void blockWorker() throws InterruptedException {
+		queue.offer("first", 60, "0");
+		assertTrue(firstFlush.await(5, TimeUnit.SECONDS));
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("timeout", System.currentTimeMillis() < deadline);
+			ThreadUtil.sleep(5);
+		}
+	}
+}